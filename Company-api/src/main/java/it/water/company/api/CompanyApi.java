@@ -1,8 +1,16 @@
 package it.water.company.api;
 
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.api.service.BaseEntityApi;
 
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateScan;
+
+import java.util.List;
 
 /**
  * @Generated by Water Generator
@@ -11,4 +19,51 @@ import it.water.company.model.Company;
  */
 public interface CompanyApi extends BaseEntityApi<Company> {
 
-}
\ No newline at end of file
+    /**
+     * Find all companies visible to the current user, optionally skipping the COUNT query over the filtered set.
+     *
+     * @param filter     query filter
+     * @param delta      page size
+     * @param page       page number
+     * @param queryOrder query order
+     * @param withCount  true to count total results, false to only detect whether a next page exists
+     * @return paginated results
+     */
+    PaginableResult<Company> findAll(Query filter, int delta, int page, QueryOrder queryOrder, boolean withCount);
+
+    /**
+     * Resolves many companies at once, permissions are checked for the whole set.
+     *
+     * @param ids company ids, duplicates are resolved once
+     * @return companies visible to the current user in the requested order, plus missing and not allowed ids
+     */
+    CompanyBatchResult findAllByIds(List<Long> ids);
+
+    /**
+     * Compares the company with the other companies of its area, nation and postal code.
+     *
+     * @param id company id
+     * @return likely duplicates of the company visible to the current user, most similar first
+     */
+    List<CompanyDuplicate> findDuplicates(long id);
+
+    /**
+     * Starts a background scan of the whole company table for likely duplicates, unless one is running.
+     *
+     * @return state of the scan, its report lists only duplicates visible to the current user
+     */
+    CompanyDuplicateScan startDuplicatesScan();
+
+    /**
+     * @return state of the running or last scan, with the report of the last completed one
+     * listing only duplicates visible to the current user
+     */
+    CompanyDuplicateScan getDuplicatesScan();
+
+    /**
+     * @return likely duplicates found by the checks of the most recently written companies, most recent first,
+     * only pairs of companies both visible to the current user are listed
+     */
+    List<CompanyDuplicate> getFlaggedDuplicates();
+
+}
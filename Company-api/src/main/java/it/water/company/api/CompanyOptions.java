@@ -0,0 +1,126 @@
+package it.water.company.api;
+
+import it.water.core.api.service.Service;
+
+/**
+ * Interface exposing the configuration options of the Company module.
+ * Values are read from the application properties, falling back to defaults defined in CompanyConstants.
+ */
+public interface CompanyOptions extends Service {
+
+    /**
+     * @return max number of filter shapes kept in the findAll query plan cache, 0 disables the cache
+     */
+    int getQueryPlanCacheSize();
+
+    /**
+     * @return millis an approximate total is kept for count-free findAll, 0 disables approximate totals
+     */
+    long getCountCacheTtlMillis();
+
+    /**
+     * @return name of the read-only persistence unit, empty if reads must go to the primary unit
+     */
+    String getReadPersistenceUnit();
+
+    /**
+     * @return millis a caller is pinned to the primary persistence unit after a write, 0 disables pinning
+     */
+    long getReadYourWritesWindowMillis();
+
+    /**
+     * @return true if duplicated VAT numbers are detected in memory before reaching the database
+     */
+    boolean isVatNumberPreCheckEnabled();
+
+    /**
+     * @return true if Company REST endpoints are protected by the adaptive concurrency limiter
+     */
+    boolean isLimiterEnabled();
+
+    /**
+     * @return concurrency limit of each bulkhead at startup
+     */
+    int getLimiterInitialLimit();
+
+    /**
+     * @return lowest concurrency limit of each bulkhead
+     */
+    int getLimiterMinLimit();
+
+    /**
+     * @return highest concurrency limit of each bulkhead
+     */
+    int getLimiterMaxLimit();
+
+    /**
+     * @return percentage of the baseline latency over which the database is considered overloaded
+     */
+    int getLimiterLatencyTolerancePercent();
+
+    /**
+     * @return true if the warm-up phase runs when the module starts
+     */
+    boolean isWarmUpEnabled();
+
+    /**
+     * @return path of the file storing hot company ids and filters across restarts, empty to keep them only in memory
+     */
+    String getWarmUpStateFile();
+
+    /**
+     * @return max number of hot company ids preloaded by the warm-up
+     */
+    int getWarmUpHotIdsSize();
+
+    /**
+     * @return time budget of the warm-up in millis
+     */
+    long getWarmUpTimeoutMillis();
+
+    /**
+     * @return true if Company REST operations are traced phase by phase
+     */
+    boolean isTraceEnabled();
+
+    /**
+     * @return duration in millis over which an operation is logged with its per-phase breakdown
+     */
+    long getTraceSlowThresholdMillis();
+
+    /**
+     * @return one every N operations under the threshold is logged anyway, 0 disables sampling
+     */
+    int getTraceSamplingInterval();
+
+    /**
+     * @return true if companies are checked for duplicates in their area on save and update
+     */
+    boolean isDuplicatesCheckEnabled();
+
+    /**
+     * @return min business name similarity, in percent, for two companies to be reported as duplicates
+     */
+    int getDuplicatesThresholdPercent();
+
+    /**
+     * @return blocks of candidate duplicates larger than this size are not compared, nor areas larger than this size checked on write
+     */
+    int getDuplicatesMaxBlockSize();
+
+    /**
+     * @return max number of duplicates listed by the batch report
+     */
+    int getDuplicatesReportMaxSize();
+
+    /**
+     * @return number of ids loaded by each IN query of a multi-get
+     */
+    int getBatchGetChunkSize();
+
+    /**
+     * @return max number of ids accepted by a single multi-get request
+     */
+    int getBatchGetMaxIds();
+
+}
@@ -1,7 +1,15 @@
 package it.water.company.api;
 
+import it.water.company.model.CompactCompanies;
 import it.water.company.model.Company;
+import it.water.core.api.model.PaginableResult;
 import it.water.core.api.repository.BaseRepository;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * @Generated by Water Generator
@@ -10,4 +18,104 @@ import it.water.core.api.repository.BaseRepository;
  */
 public interface CompanyRepository extends BaseRepository<Company> {
 
+    /**
+     * Find all companies, optionally skipping the COUNT query over the filtered set.
+     * When withCount is false, the next page is detected by reading one row more than delta
+     * and the number of pages is approximate.
+     *
+     * @param delta      page size
+     * @param page       page number
+     * @param filter     query filter
+     * @param queryOrder query order
+     * @param withCount  true to count total results
+     * @return paginated results
+     */
+    PaginableResult<Company> findAll(int delta, int page, Query filter, QueryOrder queryOrder, boolean withCount);
+
+    /**
+     * Checks on the primary persistence unit whether a company with the given VAT number exists.
+     *
+     * @param vatNumber  VAT number
+     * @param excludedId id of a company to ignore, 0 to check every company
+     * @return true if another company already uses the VAT number
+     */
+    boolean existsByVatNumber(String vatNumber, long excludedId);
+
+    /**
+     * Reads the stored VAT number of a company on the primary persistence unit, without loading the company.
+     *
+     * @param id company id
+     * @return VAT number, null if the company does not exist
+     */
+    String findVatNumber(long id);
+
+    /**
+     * Counts stored VAT numbers on the primary persistence unit.
+     *
+     * @return number of companies with a VAT number
+     */
+    long countVatNumbers();
+
+    /**
+     * Streams every stored VAT number, without loading companies.
+     *
+     * @param consumer VAT number consumer
+     */
+    void forEachVatNumber(Consumer<String> consumer);
+
+    /**
+     * Loads companies matching the filter straight into the compact read model, without managed entities.
+     *
+     * @param filter query filter, null for every company
+     * @return detached compact companies
+     * @throws it.water.core.model.exceptions.WaterRuntimeException if the filter uses fields or operators the query plan cannot compile, such as LIKE
+     */
+    CompactCompanies findAllCompact(Query filter);
+
+    /**
+     * Loads companies by id with IN queries, one for each chunk of ids.
+     *
+     * @param ids company ids
+     * @return companies found, in no particular order
+     */
+    List<Company> findAllByIds(Collection<Long> ids);
+
+    /**
+     * Loads the companies of an area into the compact read model.
+     *
+     * @param nation     nation
+     * @param postalCode postal code
+     * @param maxResults max number of companies loaded, -1 to load the whole area
+     * @return detached compact companies with the given nation and postal code
+     */
+    CompactCompanies findAllCompactByArea(String nation, String postalCode, int maxResults);
+
+    /**
+     * Streams the whole company table ordered by area, handing each area to the consumer as soon as it is complete,
+     * so only one area at a time is held by the repository.
+     *
+     * @param consumer area consumer, each area contains companies with the same nation and postal code
+     */
+    void forEachCompanyArea(Consumer<CompactCompanies> consumer);
+
+    /**
+     * @param max max number of filters
+     * @return filters recently served by findAll, most recent first, with values replaced by placeholders
+     */
+    List<String> getRecentFilterShapes(int max);
+
+    /**
+     * Compiles a filter shape returned by getRecentFilterShapes and prepares its queries on the persistence provider,
+     * without executing them.
+     *
+     * @param filterShape filter with values replaced by placeholders
+     * @return true if the filter was compiled
+     */
+    boolean precompileFilterShape(String filterShape);
+
+    /**
+     * @return number of COUNT queries issued by countAll and by counted findAll since startup
+     */
+    long getCountQueries();
+
 }
@@ -1,8 +1,17 @@
 package it.water.company.api;
 
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.api.service.BaseEntitySystemApi;
 
+import it.water.company.model.CompactCompanies;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateScan;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * @Generated by Water Generator
@@ -12,4 +21,62 @@ import it.water.company.model.Company;
  */
 public interface CompanySystemApi extends BaseEntitySystemApi<Company> {
 
+    /**
+     * Find all companies, optionally skipping the COUNT query over the filtered set.
+     *
+     * @param filter     query filter
+     * @param delta      page size
+     * @param page       page number
+     * @param queryOrder query order
+     * @param withCount  true to count total results, false to only detect whether a next page exists
+     * @return paginated results
+     */
+    PaginableResult<Company> findAll(Query filter, int delta, int page, QueryOrder queryOrder, boolean withCount);
+
+    /**
+     * Loads companies into a memory-compact, read-only representation, meant for matching jobs and caches
+     * which need to keep large company sets in memory.
+     *
+     * @param filter query filter, null for every company
+     * @return detached compact companies
+     * @throws it.water.core.model.exceptions.WaterRuntimeException if the filter uses fields or operators the query plan cannot compile, such as LIKE
+     */
+    CompactCompanies findAllCompact(Query filter);
+
+    /**
+     * Loads companies by id bypassing permissions.
+     *
+     * @param ids company ids
+     * @return companies found, in no particular order
+     */
+    List<Company> findAllByIds(Collection<Long> ids);
+
+    /**
+     * Compares the company with the other companies of its area, nation and postal code.
+     *
+     * @param id company id
+     * @return likely duplicates of the company, most similar first
+     */
+    List<CompanyDuplicate> findDuplicates(long id);
+
+    /**
+     * Starts a background scan of the whole company table for likely duplicates, comparing only companies of the same area
+     * whose names share a blocking key. Only one scan runs at a time: if one is running, it is left alone.
+     *
+     * @return state of the scan
+     */
+    CompanyDuplicateScan startDuplicatesScan();
+
+    /**
+     * @return state of the running or last scan, with the report of the last completed one
+     */
+    CompanyDuplicateScan getDuplicatesScan();
+
+    /**
+     * Saved and updated companies are checked for duplicates in background, after the write.
+     *
+     * @return likely duplicates found by the checks of the most recently written companies, most recent first
+     */
+    List<CompanyDuplicate> getFlaggedDuplicates();
+
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package it.water.company.api;
+
+import it.water.core.api.service.Service;
+
+/**
+ * Warm-up of the Company module.
+ * Tracks the most requested companies while running, stores them at shutdown
+ * and reads them again, together with the most used findAll filters, on the next start.
+ * It also measures the time the module takes to reach steady state after being activated.
+ */
+public interface CompanyWarmUp extends Service {
+
+    /**
+     * Records a successful lookup of a company by id.
+     *
+     * @param id           company id
+     * @param latencyNanos latency of the lookup
+     */
+    void recordFind(long id, long latencyNanos);
+
+    /**
+     * Runs the warm-up: reads hot companies, compiles the stored findAll filters and exercises serialization.
+     */
+    void warmUp();
+
+    /**
+     * Writes hot company ids and filters to the configured state file.
+     */
+    void saveState();
+}
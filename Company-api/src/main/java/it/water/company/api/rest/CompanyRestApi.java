@@ -12,6 +12,8 @@ import io.swagger.annotations.*;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 
+import java.util.List;
+
 /**
  * @Generated by Water Generator
  * Rest Api Interface for Company entity.
@@ -79,7 +81,7 @@ public interface CompanyRestApi extends RestApi {
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
     @JsonView(WaterJsonView.Public.class)
-    @ApiOperation(value = "/", notes = "Company Find All API", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiOperation(value = "/", notes = "Company Find All API, with withCount=false total results are not counted and only the next page is detected", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = "Successful operation"),
             @ApiResponse(code = 401, message = "Not authorized"),
@@ -87,7 +89,7 @@ public interface CompanyRestApi extends RestApi {
             @ApiResponse(code = 422, message = "Duplicated Entity"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
-    PaginableResult<Company> findAll();
+    PaginableResult<Company> findAll(@QueryParam("withCount") @DefaultValue("true") boolean withCount);
 
        
     @LoggedIn
@@ -105,4 +107,80 @@ public interface CompanyRestApi extends RestApi {
             @ApiResponse(code = 500, message = "Internal server error")
     })
     void remove(@PathParam("id") long id);
+
+       
+    @LoggedIn
+        @Path("/batch-get")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/batch-get", notes = "Company Multi-get API, resolves a list of ids with one query per chunk", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    CompanyBatchResult findAllByIds(List<Long> ids);
+
+       
+    @LoggedIn
+        @Path("/{id}/duplicates")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/{id}/duplicates", notes = "Company Find Duplicates API, likely duplicates in the same nation and postal code", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 404, message = "Entity not found"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<CompanyDuplicate> findDuplicates(@PathParam("id") long id);
+
+       
+    @LoggedIn
+        @Path("/duplicates/report")
+    @POST
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/duplicates/report", notes = "Company Duplicates Scan API, starts a background scan of the whole table unless one is running", httpMethod = "POST", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    CompanyDuplicateScan startDuplicatesScan();
+
+       
+    @LoggedIn
+        @Path("/duplicates/report")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/duplicates/report", notes = "Company Duplicates Report API, state of the background scan and report of the last completed one", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    CompanyDuplicateScan getDuplicatesScan();
+
+       
+    @LoggedIn
+        @Path("/duplicates/flagged")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @JsonView(WaterJsonView.Public.class)
+    @ApiOperation(value = "/duplicates/flagged", notes = "Company Flagged Duplicates API, likely duplicates found checking the most recently saved and updated companies", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<CompanyDuplicate> getFlaggedDuplicates();
 }
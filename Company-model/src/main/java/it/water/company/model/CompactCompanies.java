@@ -0,0 +1,58 @@
+package it.water.company.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Set of CompactCompany sharing the same dictionary for nation, city and postal code.
+ */
+public class CompactCompanies implements Iterable<CompactCompany> {
+    private final CompanyStringDictionary dictionary = new CompanyStringDictionary();
+    private final List<CompactCompany> companies;
+
+    public CompactCompanies() {
+        this.companies = new ArrayList<>();
+    }
+
+    public CompactCompanies(int expectedSize) {
+        this.companies = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * Adds a company, encoding its repetitive values in the shared dictionary.
+     *
+     * @return the added compact company
+     */
+    public CompactCompany add(long id, String businessName, String invoiceAddress, String city, String postalCode, String nation, String vatNumber, Long ownerUserId) {
+        CompactCompany company = new CompactCompany(id, businessName, invoiceAddress, vatNumber, ownerUserId != null ? ownerUserId : 0,
+                dictionary.encode(city), dictionary.encode(postalCode), dictionary.encode(nation), dictionary);
+        companies.add(company);
+        return company;
+    }
+
+    public CompactCompany add(Company company) {
+        return add(company.getId(), company.getBusinessName(), company.getInvoiceAddress(), company.getCity(), company.getPostalCode(), company.getNation(), company.getVatNumber(), company.getOwnerUserId());
+    }
+
+    public List<CompactCompany> getCompanies() {
+        return Collections.unmodifiableList(companies);
+    }
+
+    public int size() {
+        return companies.size();
+    }
+
+    /**
+     * @return number of distinct nation, city and postal code values
+     */
+    public int getDistinctValues() {
+        return dictionary.size();
+    }
+
+    @Override
+    public Iterator<CompactCompany> iterator() {
+        return getCompanies().iterator();
+    }
+}
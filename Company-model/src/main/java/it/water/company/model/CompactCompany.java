@@ -0,0 +1,45 @@
+package it.water.company.model;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Read-only, detached representation of a Company meant to be kept in memory in large numbers.
+ * Nation, city and postal code are dictionary encoded through the CompanyStringDictionary shared by a CompactCompanies set,
+ * so each distinct value is stored once. It is never managed by a persistence context and cannot be saved back.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class CompactCompany {
+    private final long id;
+    private final String businessName;
+    private final String invoiceAddress;
+    private final String vatNumber;
+    private final long ownerUserId;
+    @Getter(AccessLevel.NONE)
+    private final int cityCode;
+    @Getter(AccessLevel.NONE)
+    private final int postalCodeCode;
+    @Getter(AccessLevel.NONE)
+    private final int nationCode;
+    @Getter(AccessLevel.NONE)
+    private final CompanyStringDictionary dictionary;
+
+    public String getCity() {
+        return dictionary.decode(cityCode);
+    }
+
+    public String getPostalCode() {
+        return dictionary.decode(postalCodeCode);
+    }
+
+    public String getNation() {
+        return dictionary.decode(nationCode);
+    }
+
+    @Override
+    public String toString() {
+        return "CompactCompany(id=" + id + ", businessName=" + businessName + ", vatNumber=" + vatNumber + ")";
+    }
+}
@@ -23,7 +23,8 @@ import lombok.*;
  */
 //JPA
 @Entity
-@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"vatNumber"}))
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"vatNumber"}),
+        indexes = @Index(name = "company_area_idx", columnList = "nation, postalCode"))
 @Access(AccessType.FIELD)
 //Lombok
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
@@ -0,0 +1,26 @@
+package it.water.company.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Outcome of a multi-get by id: every requested id is either among the found companies, missing or not allowed.
+ */
+@Getter
+@AllArgsConstructor
+public final class CompanyBatchResult {
+    /**
+     * Companies visible to the caller, in the order of the requested ids
+     */
+    private final List<Company> companies;
+    /**
+     * Requested ids matching no company
+     */
+    private final List<Long> missingIds;
+    /**
+     * Requested ids of companies the caller is not allowed to see
+     */
+    private final List<Long> forbiddenIds;
+}
@@ -0,0 +1,169 @@
+package it.water.company.model;
+
+/**
+ * Company module constants.
+ * Contains the application property keys used to tune the Company services.
+ */
+public class CompanyConstants {
+
+    /**
+     * Max number of filter shapes kept in the findAll query plan cache
+     */
+    public static final String PROP_QUERY_PLAN_CACHE_SIZE = "water.company.query.plan.cache.size";
+
+    public static final int DEFAULT_QUERY_PLAN_CACHE_SIZE = 256;
+
+    /**
+     * How long approximate totals computed by a counted findAll are reused by count-free findAll on the same filter
+     */
+    public static final String PROP_COUNT_CACHE_TTL_MILLIS = "water.company.count.cache.ttl.millis";
+
+    public static final long DEFAULT_COUNT_CACHE_TTL_MILLIS = 30000;
+
+    /**
+     * Read-only persistence unit used by find and findAll, empty means every query goes to the primary unit
+     */
+    public static final String PROP_READ_PERSISTENCE_UNIT = "water.company.read.persistence.unit";
+
+    public static final String DEFAULT_READ_PERSISTENCE_UNIT = "";
+
+    /**
+     * Millis a caller is pinned to the primary persistence unit after a write
+     */
+    public static final String PROP_READ_YOUR_WRITES_WINDOW_MILLIS = "water.company.read.your.writes.window.millis";
+
+    public static final long DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS = 5000;
+
+    /**
+     * Enables the in-memory VAT number pre-check which rejects duplicates before reaching the database
+     */
+    public static final String PROP_VAT_NUMBER_PRECHECK_ENABLED = "water.company.vat.number.precheck.enabled";
+
+    public static final boolean DEFAULT_VAT_NUMBER_PRECHECK_ENABLED = true;
+
+    /**
+     * Enables the adaptive concurrency limiter in front of Company REST endpoints.
+     * Disabled by default: a latency-driven limit also shrinks when the database becomes lastingly slower, so it is opt-in
+     */
+    public static final String PROP_LIMITER_ENABLED = "water.company.limiter.enabled";
+
+    public static final boolean DEFAULT_LIMITER_ENABLED = false;
+
+    /**
+     * Initial, min and max concurrency limit of each bulkhead (reads and writes)
+     */
+    public static final String PROP_LIMITER_INITIAL_LIMIT = "water.company.limiter.initial.limit";
+
+    public static final int DEFAULT_LIMITER_INITIAL_LIMIT = 20;
+
+    public static final String PROP_LIMITER_MIN_LIMIT = "water.company.limiter.min.limit";
+
+    public static final int DEFAULT_LIMITER_MIN_LIMIT = 2;
+
+    public static final String PROP_LIMITER_MAX_LIMIT = "water.company.limiter.max.limit";
+
+    public static final int DEFAULT_LIMITER_MAX_LIMIT = 200;
+
+    /**
+     * Percentage of the long-term average latency over which the short-term average makes the limiter consider the database overloaded
+     */
+    public static final String PROP_LIMITER_LATENCY_TOLERANCE_PERCENT = "water.company.limiter.latency.tolerance.percent";
+
+    public static final int DEFAULT_LIMITER_LATENCY_TOLERANCE_PERCENT = 200;
+
+    /**
+     * Enables the warm-up phase run when the Company module starts
+     */
+    public static final String PROP_WARMUP_ENABLED = "water.company.warmup.enabled";
+
+    public static final boolean DEFAULT_WARMUP_ENABLED = true;
+
+    /**
+     * File where hot company ids and filters are written at shutdown and read back by the next warm-up,
+     * each instance needs its own file. Relative paths are resolved against the working directory of the runtime
+     */
+    public static final String PROP_WARMUP_STATE_FILE = "water.company.warmup.state.file";
+
+    public static final String DEFAULT_WARMUP_STATE_FILE = "data/company-warmup.state";
+
+    /**
+     * Max number of hot company ids preloaded by the warm-up
+     */
+    public static final String PROP_WARMUP_HOT_IDS_SIZE = "water.company.warmup.hot.ids.size";
+
+    public static final int DEFAULT_WARMUP_HOT_IDS_SIZE = 200;
+
+    /**
+     * Time budget of the warm-up, remaining steps are skipped once it is exceeded
+     */
+    public static final String PROP_WARMUP_TIMEOUT_MILLIS = "water.company.warmup.timeout.millis";
+
+    public static final long DEFAULT_WARMUP_TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Enables per-phase tracing of Company REST operations
+     */
+    public static final String PROP_TRACE_ENABLED = "water.company.trace.enabled";
+
+    public static final boolean DEFAULT_TRACE_ENABLED = true;
+
+    /**
+     * Operations lasting longer than this threshold are logged with their per-phase breakdown
+     */
+    public static final String PROP_TRACE_SLOW_THRESHOLD_MILLIS = "water.company.trace.slow.threshold.millis";
+
+    public static final long DEFAULT_TRACE_SLOW_THRESHOLD_MILLIS = 500;
+
+    /**
+     * One operation every N below the threshold is logged anyway, 0 disables sampling
+     */
+    public static final String PROP_TRACE_SAMPLING_INTERVAL = "water.company.trace.sampling.interval";
+
+    public static final int DEFAULT_TRACE_SAMPLING_INTERVAL = 0;
+
+    /**
+     * Enables the duplicate check of companies in the same area on save and update
+     */
+    public static final String PROP_DUPLICATES_CHECK_ENABLED = "water.company.duplicates.check.enabled";
+
+    public static final boolean DEFAULT_DUPLICATES_CHECK_ENABLED = true;
+
+    /**
+     * Min business name similarity, in percent, for two companies of the same area to be reported as duplicates
+     */
+    public static final String PROP_DUPLICATES_THRESHOLD_PERCENT = "water.company.duplicates.threshold.percent";
+
+    public static final int DEFAULT_DUPLICATES_THRESHOLD_PERCENT = 88;
+
+    /**
+     * Blocks of candidate duplicates larger than this size are not compared, keeping comparisons linear in the table size.
+     * Areas larger than this size are not checked on write
+     */
+    public static final String PROP_DUPLICATES_MAX_BLOCK_SIZE = "water.company.duplicates.max.block.size";
+
+    public static final int DEFAULT_DUPLICATES_MAX_BLOCK_SIZE = 1000;
+
+    /**
+     * Max number of duplicates listed by the batch report
+     */
+    public static final String PROP_DUPLICATES_REPORT_MAX_SIZE = "water.company.duplicates.report.max.size";
+
+    public static final int DEFAULT_DUPLICATES_REPORT_MAX_SIZE = 10000;
+
+    /**
+     * Number of ids loaded by each IN query of a multi-get
+     */
+    public static final String PROP_BATCH_GET_CHUNK_SIZE = "water.company.batch.get.chunk.size";
+
+    public static final int DEFAULT_BATCH_GET_CHUNK_SIZE = 100;
+
+    /**
+     * Max number of ids accepted by a single multi-get request, larger requests are rejected
+     */
+    public static final String PROP_BATCH_GET_MAX_IDS = "water.company.batch.get.max.ids";
+
+    public static final int DEFAULT_BATCH_GET_MAX_IDS = 500;
+
+    private CompanyConstants() {
+    }
+}
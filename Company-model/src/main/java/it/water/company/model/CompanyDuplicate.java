@@ -0,0 +1,24 @@
+package it.water.company.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Likely duplicate of a company: another company of the same nation and postal code with a similar business name.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public final class CompanyDuplicate {
+    private final long companyId;
+    private final long duplicateId;
+    private final String businessName;
+    private final String duplicateBusinessName;
+    /**
+     * Name similarity between 0 and 1
+     */
+    private final double score;
+}
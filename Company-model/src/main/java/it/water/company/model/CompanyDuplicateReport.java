@@ -0,0 +1,26 @@
+package it.water.company.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Outcome of a duplicate detection run over the whole company table.
+ * Blocks larger than the configured max size are purged: their key is too common to tell companies apart,
+ * companies in them are still compared through their other blocks.
+ */
+@Getter
+@AllArgsConstructor
+public final class CompanyDuplicateReport {
+    private final long scannedCompanies;
+    private final long areas;
+    private final long comparisons;
+    private final long purgedBlocks;
+    private final long duplicatesFound;
+    private final long durationMillis;
+    /**
+     * Duplicates found, truncated to the configured max report size
+     */
+    private final List<CompanyDuplicate> duplicates;
+}
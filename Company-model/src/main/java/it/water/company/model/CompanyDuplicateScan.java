@@ -0,0 +1,28 @@
+package it.water.company.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * State of the background duplicate scan, polled by clients until the scan they started is over.
+ */
+@Getter
+@AllArgsConstructor
+public final class CompanyDuplicateScan {
+    /**
+     * True while a scan is running
+     */
+    private final boolean running;
+    /**
+     * Start time of the running or last scan, 0 if no scan ever started
+     */
+    private final long startedAt;
+    /**
+     * Error message of the last scan, null if it did not fail
+     */
+    private final String failure;
+    /**
+     * Report of the last completed scan, null if no scan ever completed
+     */
+    private final CompanyDuplicateReport report;
+}
@@ -0,0 +1,51 @@
+package it.water.company.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for highly repetitive company values such as nation, city and postal code.
+ * Each distinct value is stored once and referenced by an int code.
+ * Encoding is synchronized, decoding is lock free so compact sets can be read concurrently.
+ */
+public class CompanyStringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[64];
+    private int size;
+
+    /**
+     * @param value value to encode, can be null
+     * @return the code of the value, -1 for null
+     */
+    public synchronized int encode(String value) {
+        if (value == null)
+            return -1;
+        Integer code = codes.get(value);
+        if (code != null)
+            return code;
+        String[] current = values;
+        if (size == current.length)
+            current = Arrays.copyOf(current, size * 2);
+        current[size] = value;
+        //volatile write publishes the new value to lock free readers
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @param code value code
+     * @return the decoded value, null for code -1
+     */
+    public String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    /**
+     * @return number of distinct values
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -19,6 +19,9 @@ package it.water.company.service.rest.spring;
 import com.fasterxml.jackson.annotation.JsonView;
 import it.water.company.api.rest.CompanyRestApi;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateScan;
 import it.water.core.api.model.PaginableResult;
 import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.core.api.service.rest.WaterJsonView;
@@ -26,6 +29,8 @@ import it.water.service.rest.api.security.LoggedIn;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 /**
  * @Author Aristide Cittadino
  * Interface exposing same methods of its parent CompanyRestApi but adding Spring annotations.
@@ -52,11 +57,36 @@ public interface CompanySpringRestApi extends CompanyRestApi {
     @LoggedIn
     @GetMapping
     @JsonView(WaterJsonView.Public.class)
-    PaginableResult<Company> findAll();
+    PaginableResult<Company> findAll(@RequestParam(value = "withCount", defaultValue = "true") boolean withCount);
 
     @LoggedIn
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @JsonView(WaterJsonView.Public.class)
     void remove(@PathVariable("id") long id);
+
+    @LoggedIn
+    @PostMapping("/batch-get")
+    @JsonView(WaterJsonView.Public.class)
+    CompanyBatchResult findAllByIds(@RequestBody List<Long> ids);
+
+    @LoggedIn
+    @GetMapping("/{id}/duplicates")
+    @JsonView(WaterJsonView.Public.class)
+    List<CompanyDuplicate> findDuplicates(@PathVariable("id") long id);
+
+    @LoggedIn
+    @PostMapping("/duplicates/report")
+    @JsonView(WaterJsonView.Public.class)
+    CompanyDuplicateScan startDuplicatesScan();
+
+    @LoggedIn
+    @GetMapping("/duplicates/report")
+    @JsonView(WaterJsonView.Public.class)
+    CompanyDuplicateScan getDuplicatesScan();
+
+    @LoggedIn
+    @GetMapping("/duplicates/flagged")
+    @JsonView(WaterJsonView.Public.class)
+    List<CompanyDuplicate> getFlaggedDuplicates();
 }
@@ -2,11 +2,22 @@
 package it.water.company.service.rest.spring;
 
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateScan;
+import it.water.company.service.rest.CompanyOverloadException;
 import it.water.company.service.rest.CompanyRestControllerImpl;
 import it.water.core.api.model.PaginableResult;
 import it.water.core.api.repository.query.Query;
 import it.water.core.api.repository.query.QueryOrder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
 
 
 /**
@@ -48,7 +59,57 @@ public class CompanySpringRestControllerImpl extends CompanyRestControllerImpl i
 
     @Override
     @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
-    public PaginableResult<Company> findAll() {
-        return super.findAll();
+    public PaginableResult<Company> findAll(boolean withCount) {
+        return super.findAll(withCount);
+    }
+
+    @Override
+    @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
+    public CompanyBatchResult findAllByIds(List<Long> ids) {
+        return super.findAllByIds(ids);
+    }
+
+    @Override
+    @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
+    public List<CompanyDuplicate> findDuplicates(long id) {
+        return super.findDuplicates(id);
+    }
+
+    @Override
+    @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
+    public CompanyDuplicateScan startDuplicatesScan() {
+        return super.startDuplicatesScan();
+    }
+
+    @Override
+    @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
+    public CompanyDuplicateScan getDuplicatesScan() {
+        return super.getDuplicatesScan();
+    }
+
+    @Override
+    @SuppressWarnings("java:S1185") //disabling sonar because spring needs to override this method
+    public List<CompanyDuplicate> getFlaggedDuplicates() {
+        return super.getFlaggedDuplicates();
+    }
+
+    /**
+     * Rejections are rethrown as they are and mapped by the handler below.
+     */
+    @Override
+    protected RuntimeException overloaded(CompanyOverloadException e) {
+        return e;
+    }
+
+    @Override
+    protected RuntimeException tooManyIds(String message) {
+        return new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, message);
+    }
+
+    @ExceptionHandler(CompanyOverloadException.class)
+    public ResponseEntity<String> handleOverload(CompanyOverloadException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(e.getMessage());
     }
 }
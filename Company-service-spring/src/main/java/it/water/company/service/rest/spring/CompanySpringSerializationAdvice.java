@@ -0,0 +1,50 @@
+package it.water.company.service.rest.spring;
+
+import it.water.company.service.rest.CompanySlowOperationLog;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Spring hook measuring the write of the response body of traced Company operations.
+ * The body advice runs right before the message converter writes the body,
+ * the handler interceptor completes once the response is written: the time in between is reported
+ * to CompanySlowOperationLog as the serialization phase.
+ */
+@ControllerAdvice(assignableTypes = CompanySpringRestControllerImpl.class)
+public class CompanySpringSerializationAdvice implements ResponseBodyAdvice<Object>, HandlerInterceptor, WebMvcConfigurer {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request, ServerHttpResponse response) {
+        CompanySlowOperationLog.serializationStarted();
+        return body;
+    }
+
+    /**
+     * Ends the traced operation even when no body was written, for example when writing failed.
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        CompanySlowOperationLog.serializationEnded();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this);
+    }
+}
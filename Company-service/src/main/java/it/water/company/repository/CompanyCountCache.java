@@ -0,0 +1,66 @@
+package it.water.company.repository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Short lived cache of filtered totals, keyed by shape and bound values.
+ * Totals are stored by counted findAll and reused by count-free findAll to report an approximate number of pages.
+ */
+public class CompanyCountCache {
+    private static final int MAX_ENTRIES = 1024;
+
+    private final long ttlMillis;
+    private final Map<String, Entry> totals = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public CompanyCountCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public void put(CompanyQueryShape shape, List<Object> values, long total) {
+        if (ttlMillis <= 0)
+            return;
+        synchronized (totals) {
+            totals.put(key(shape, values), new Entry(total, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * @return the cached total or -1 if missing or expired
+     */
+    public long get(CompanyQueryShape shape, List<Object> values) {
+        if (ttlMillis <= 0)
+            return -1;
+        String key = key(shape, values);
+        synchronized (totals) {
+            Entry entry = totals.get(key);
+            if (entry == null)
+                return -1;
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                totals.remove(key);
+                return -1;
+            }
+            return entry.total;
+        }
+    }
+
+    private static String key(CompanyQueryShape shape, List<Object> values) {
+        return shape.getKey() + values;
+    }
+
+    private static final class Entry {
+        private final long total;
+        private final long expiresAt;
+
+        private Entry(long total, long expiresAt) {
+            this.total = total;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package it.water.company.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Splits ids into chunks for IN queries.
+ * Every chunk has exactly chunkSize elements, the last one is padded repeating its last id,
+ * so all chunks produce the same statement and reuse the same query plan on the persistence provider and on the database.
+ */
+public final class CompanyIdBatches {
+
+    private CompanyIdBatches() {
+    }
+
+    /**
+     * @param ids requested ids, can contain nulls and duplicates
+     * @return distinct non null ids, in the requested order
+     */
+    public static List<Long> distinct(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty())
+            return Collections.emptyList();
+        LinkedHashSet<Long> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        return new ArrayList<>(distinct);
+    }
+
+    /**
+     * @param ids       distinct ids
+     * @param chunkSize size of each chunk
+     * @return chunks of exactly chunkSize ids
+     */
+    public static List<List<Long>> chunks(List<Long> ids, int chunkSize) {
+        int size = Math.max(1, chunkSize);
+        List<List<Long>> chunks = new ArrayList<>((ids.size() + size - 1) / size);
+        for (int from = 0; from < ids.size(); from += size) {
+            List<Long> chunk = new ArrayList<>(ids.subList(from, Math.min(from + size, ids.size())));
+            Long last = chunk.get(chunk.size() - 1);
+            while (chunk.size() < size)
+                chunk.add(last);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * @return filter definition matching the ids of the chunk
+     */
+    public static String inFilter(List<Long> chunk) {
+        StringBuilder sb = new StringBuilder("id IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(chunk.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,38 @@
+package it.water.company.repository;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread bound pagination mode used by count-free findAll.
+ * Callers at the REST or service layer run the regular findAll chain inside this scope,
+ * so permission filters are applied as usual while the repository skips the COUNT query.
+ */
+public final class CompanyPaginationScope {
+    private static final ThreadLocal<Boolean> COUNT_SKIPPED = new ThreadLocal<>();
+
+    private CompanyPaginationScope() {
+    }
+
+    /**
+     * Runs the given findAll invocation without counting total results.
+     */
+    public static <T> T withoutCount(Supplier<T> findAll) {
+        Boolean previous = COUNT_SKIPPED.get();
+        COUNT_SKIPPED.set(Boolean.TRUE);
+        try {
+            return findAll.get();
+        } finally {
+            if (previous == null)
+                COUNT_SKIPPED.remove();
+            else
+                COUNT_SKIPPED.set(previous);
+        }
+    }
+
+    /**
+     * @return true if the current thread is running a count-free findAll
+     */
+    public static boolean isCountSkipped() {
+        return Boolean.TRUE.equals(COUNT_SKIPPED.get());
+    }
+}
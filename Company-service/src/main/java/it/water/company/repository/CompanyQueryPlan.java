@@ -0,0 +1,253 @@
+package it.water.company.repository;
+
+import it.water.core.api.repository.query.QueryOrderParameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled findAll plan for a given CompanyQueryShape.
+ * Holds the parameterized JPQL for both the page query and its COUNT partner, so that requests sharing the same shape
+ * produce the very same query strings and hit the persistence provider plan cache, only values are bound per request.
+ * Shapes which cannot be translated safely are compiled into an unsupported plan and served by the default repository logic.
+ * Only constructs whose meaning does not depend on the default translation are compiled: comparisons, IN lists and
+ * boolean operators. LIKE is left to the default findAll, which owns the wildcard semantics of the filter syntax.
+ * The order is the requested one only, like the default findAll: no tie-breaker is added.
+ * Equivalence with the default findAll is checked by CompanyQueryPlanEquivalenceTest for each supported construct.
+ */
+public final class CompanyQueryPlan {
+    static final String ENTITY_ALIAS = "e";
+    static final String PARAMETER_PREFIX = "p";
+
+    /**
+     * Company attributes which can be used inside a compiled plan, with the java type used to bind values.
+     */
+    private static final Map<String, Class<?>> SUPPORTED_FIELDS = Map.of(
+            "id", Long.class,
+            "ownerUserId", Long.class,
+            "businessName", String.class,
+            "invoiceAddress", String.class,
+            "city", String.class,
+            "postalCode", String.class,
+            "nation", String.class,
+            "vatNumber", String.class
+    );
+
+    private static final CompanyQueryPlan UNSUPPORTED = new CompanyQueryPlan(null, null, null, Collections.emptyList(), 0);
+
+    private final String whereClause;
+    private final String selectJpql;
+    private final String countJpql;
+    private final List<Class<?>> parameterTypes;
+    private final long compileNanos;
+
+    private CompanyQueryPlan(String whereClause, String selectJpql, String countJpql, List<Class<?>> parameterTypes, long compileNanos) {
+        this.whereClause = whereClause;
+        this.selectJpql = selectJpql;
+        this.countJpql = countJpql;
+        this.parameterTypes = parameterTypes;
+        this.compileNanos = compileNanos;
+    }
+
+    /**
+     * Translates the shape into JPQL.
+     *
+     * @param shape normalized filter
+     * @return compiled plan, or an unsupported plan if the shape contains fields or constructs which are not handled
+     */
+    static CompanyQueryPlan compile(CompanyQueryShape shape) {
+        long start = System.nanoTime();
+        try {
+            List<Class<?>> parameterTypes = new ArrayList<>();
+            String whereClause = new Compiler(shape.getTokens(), parameterTypes).compile();
+            String orderClause = compileOrder(shape.getOrderParameters());
+            String from = " from Company " + ENTITY_ALIAS + (whereClause.isEmpty() ? "" : " where " + whereClause);
+            String selectJpql = "select " + ENTITY_ALIAS + from + orderClause;
+            String countJpql = "select count(" + ENTITY_ALIAS + ")" + from;
+            return new CompanyQueryPlan(whereClause, selectJpql, countJpql, Collections.unmodifiableList(parameterTypes), System.nanoTime() - start);
+        } catch (UnsupportedShapeException e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    private static String compileOrder(List<QueryOrderParameter> orderParameters) {
+        if (orderParameters.isEmpty())
+            return "";
+        StringBuilder sb = new StringBuilder(" order by ");
+        for (QueryOrderParameter orderParameter : orderParameters) {
+            checkField(orderParameter.getName());
+            if (sb.length() > " order by ".length())
+                sb.append(", ");
+            sb.append(ENTITY_ALIAS).append('.').append(orderParameter.getName()).append(orderParameter.isAsc() ? " asc" : " desc");
+        }
+        return sb.toString();
+    }
+
+    private static Class<?> checkField(String field) {
+        Class<?> type = SUPPORTED_FIELDS.get(field);
+        if (type == null)
+            throw new UnsupportedShapeException();
+        return type;
+    }
+
+    /**
+     * Converts raw values extracted from the filter into the types expected by the plan parameters.
+     *
+     * @return converted values or null if a value cannot be converted
+     */
+    List<Object> bindValues(List<String> rawValues) {
+        if (rawValues.size() != parameterTypes.size())
+            return null;
+        List<Object> bound = new ArrayList<>(rawValues.size());
+        for (int i = 0; i < rawValues.size(); i++) {
+            String rawValue = rawValues.get(i);
+            if (parameterTypes.get(i) == Long.class) {
+                try {
+                    bound.add(Long.parseLong(rawValue.trim()));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            } else {
+                bound.add(rawValue);
+            }
+        }
+        return bound;
+    }
+
+    public boolean isSupported() {
+        return selectJpql != null;
+    }
+
+    /**
+     * @return the JPQL condition on the "e" alias, empty when the shape has no filter
+     */
+    public String getWhereClause() {
+        return whereClause;
+    }
+
+    public String getSelectJpql() {
+        return selectJpql;
+    }
+
+    public String getCountJpql() {
+        return countJpql;
+    }
+
+    public long getCompileNanos() {
+        return compileNanos;
+    }
+
+    static String parameterName(int index) {
+        return PARAMETER_PREFIX + index;
+    }
+
+    /**
+     * Recursive descent translator of the tokenized filter definition:
+     * expr := and (OR and)* ; and := unary (AND unary)* ; unary := NOT unary | '(' expr ')' | comparison
+     */
+    private static final class Compiler {
+        private final List<CompanyQueryShape.Token> tokens;
+        private final List<Class<?>> parameterTypes;
+        private int position;
+        private int valueIndex;
+
+        private Compiler(List<CompanyQueryShape.Token> tokens, List<Class<?>> parameterTypes) {
+            this.tokens = tokens;
+            this.parameterTypes = parameterTypes;
+        }
+
+        private String compile() {
+            if (tokens.isEmpty())
+                return "";
+            String expression = expression();
+            if (position != tokens.size())
+                throw new UnsupportedShapeException();
+            return expression;
+        }
+
+        private String expression() {
+            StringBuilder sb = new StringBuilder(and());
+            while (isKeyword("OR")) {
+                position++;
+                sb.append(" or ").append(and());
+            }
+            return sb.toString();
+        }
+
+        private String and() {
+            StringBuilder sb = new StringBuilder(unary());
+            while (isKeyword("AND")) {
+                position++;
+                sb.append(" and ").append(unary());
+            }
+            return sb.toString();
+        }
+
+        private String unary() {
+            if (isKeyword("NOT")) {
+                position++;
+                return "not (" + unary() + ")";
+            }
+            if (peekType() == CompanyQueryShape.TokenType.LPAREN) {
+                position++;
+                String inner = expression();
+                expect(CompanyQueryShape.TokenType.RPAREN);
+                return "(" + inner + ")";
+            }
+            return comparison();
+        }
+
+        private String comparison() {
+            CompanyQueryShape.Token fieldToken = expect(CompanyQueryShape.TokenType.WORD);
+            Class<?> fieldType = checkField(fieldToken.text);
+            String path = ENTITY_ALIAS + "." + fieldToken.text;
+            if (peekType() == CompanyQueryShape.TokenType.OPERATOR) {
+                String operator = tokens.get(position++).text;
+                return path + " " + ("!=".equals(operator) ? "<>" : operator) + " " + value(fieldType);
+            }
+            if (isKeyword("IN")) {
+                position++;
+                expect(CompanyQueryShape.TokenType.LPAREN);
+                StringBuilder sb = new StringBuilder(path).append(" in (").append(value(fieldType));
+                while (peekType() == CompanyQueryShape.TokenType.COMMA) {
+                    position++;
+                    sb.append(", ").append(value(fieldType));
+                }
+                expect(CompanyQueryShape.TokenType.RPAREN);
+                return sb.append(")").toString();
+            }
+            throw new UnsupportedShapeException();
+        }
+
+        private String value(Class<?> fieldType) {
+            CompanyQueryShape.TokenType type = peekType();
+            if (type != CompanyQueryShape.TokenType.STRING && type != CompanyQueryShape.TokenType.WORD)
+                throw new UnsupportedShapeException();
+            position++;
+            parameterTypes.add(fieldType);
+            return ":" + parameterName(valueIndex++);
+        }
+
+        private boolean isKeyword(String keyword) {
+            return peekType() == CompanyQueryShape.TokenType.WORD && keyword.equalsIgnoreCase(tokens.get(position).text);
+        }
+
+        private CompanyQueryShape.TokenType peekType() {
+            return position < tokens.size() ? tokens.get(position).type : null;
+        }
+
+        private CompanyQueryShape.Token expect(CompanyQueryShape.TokenType type) {
+            if (peekType() != type)
+                throw new UnsupportedShapeException();
+            return tokens.get(position++);
+        }
+    }
+
+    private static final class UnsupportedShapeException extends RuntimeException {
+        private UnsupportedShapeException() {
+            super(null, null, false, false);
+        }
+    }
+}
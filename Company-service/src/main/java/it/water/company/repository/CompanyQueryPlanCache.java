@@ -0,0 +1,212 @@
+package it.water.company.repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of compiled findAll plans, keyed by CompanyQueryShape key.
+ * Unsupported shapes are cached too, so they are not translated again on every request.
+ * Only getPlan, serving findAll requests, updates the statistics and the recently used order.
+ * A cache of size 0 is disabled: the repository serves every filter with the default findAll.
+ */
+public class CompanyQueryPlanCache {
+    //the translation cost of a cached shape is measured again on its first hit and then every RESAMPLE_INTERVAL hits
+    static final int RESAMPLE_INTERVAL = 1024;
+
+    private final int maxSize;
+    private final Map<String, Entry> plans;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder unsupported = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private final LongAdder estimatedSavedNanos = new LongAdder();
+
+    public CompanyQueryPlanCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.plans = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean evict = size() > CompanyQueryPlanCache.this.maxSize;
+                if (evict)
+                    evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled plan for the given shape, compiling it on a cache miss.
+     *
+     * @param shape normalized filter
+     * @return compiled plan, check CompanyQueryPlan#isSupported before using it
+     */
+    public CompanyQueryPlan getPlan(CompanyQueryShape shape) {
+        Entry entry;
+        synchronized (plans) {
+            entry = plans.get(shape.getKey());
+        }
+        CompanyQueryPlan plan;
+        if (entry != null) {
+            hits.increment();
+            plan = entry.plan;
+            estimatedSavedNanos.add(entry.translationNanos(shape));
+        } else {
+            misses.increment();
+            plan = CompanyQueryPlan.compile(shape);
+            compileNanos.add(plan.getCompileNanos());
+            if (maxSize > 0) {
+                synchronized (plans) {
+                    plans.putIfAbsent(shape.getKey(), new Entry(plan));
+                }
+            }
+        }
+        if (!plan.isSupported())
+            unsupported.increment();
+        return plan;
+    }
+
+    /**
+     * Compiles the shape into the cache, if missing, without updating statistics.
+     * Used by the warm-up, so restored filters do not count as requests.
+     *
+     * @param shape normalized filter
+     * @return compiled plan, check CompanyQueryPlan#isSupported before using it
+     */
+    public CompanyQueryPlan preload(CompanyQueryShape shape) {
+        synchronized (plans) {
+            Entry entry = plans.get(shape.getKey());
+            if (entry != null)
+                return entry.plan;
+        }
+        CompanyQueryPlan plan = CompanyQueryPlan.compile(shape);
+        if (maxSize > 0) {
+            synchronized (plans) {
+                plans.putIfAbsent(shape.getKey(), new Entry(plan));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * @param max max number of keys
+     * @return keys of supported plans, most recently used first
+     */
+    public List<String> getRecentKeys(int max) {
+        List<String> keys = new ArrayList<>();
+        synchronized (plans) {
+            //access ordered map iterates from the least recently used
+            for (Map.Entry<String, Entry> entry : plans.entrySet()) {
+                if (entry.getValue().plan.isSupported())
+                    keys.add(entry.getKey());
+            }
+        }
+        List<String> recent = new ArrayList<>(Math.min(max, keys.size()));
+        for (int i = keys.size() - 1; i >= 0 && recent.size() < max; i--) {
+            recent.add(keys.get(i));
+        }
+        return recent;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public void clear() {
+        synchronized (plans) {
+            plans.clear();
+        }
+    }
+
+    public Statistics getStatistics() {
+        int size;
+        synchronized (plans) {
+            size = plans.size();
+        }
+        return new Statistics(size, hits.sum(), misses.sum(), evictions.sum(), unsupported.sum(), compileNanos.sum(), estimatedSavedNanos.sum());
+    }
+
+    /**
+     * Cached plan with the translation cost used to estimate the time saved by hits.
+     * The cost measured when the plan is first compiled includes class loading and interpreted code,
+     * it is replaced by a fresh measure on the first hit and then periodically.
+     */
+    private static final class Entry {
+        private final CompanyQueryPlan plan;
+        private final AtomicLong hits = new AtomicLong();
+        private volatile long translationNanos;
+
+        private Entry(CompanyQueryPlan plan) {
+            this.plan = plan;
+            this.translationNanos = plan.getCompileNanos();
+        }
+
+        private long translationNanos(CompanyQueryShape shape) {
+            if (plan.isSupported() && hits.getAndIncrement() % RESAMPLE_INTERVAL == 0)
+                translationNanos = CompanyQueryPlan.compile(shape).getCompileNanos();
+            return translationNanos;
+        }
+    }
+
+    /**
+     * Snapshot of the cache metrics.
+     * estimatedSavedNanos is an estimate of the translation time avoided by cache hits: each hit is charged the translation cost
+     * of its shape, measured again on the first hit and periodically after, not the actual cost of the avoided request.
+     */
+    public static final class Statistics {
+        private final int size;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long unsupported;
+        private final long compileNanos;
+        private final long estimatedSavedNanos;
+
+        Statistics(int size, long hits, long misses, long evictions, long unsupported, long compileNanos, long estimatedSavedNanos) {
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.unsupported = unsupported;
+            this.compileNanos = compileNanos;
+            this.estimatedSavedNanos = estimatedSavedNanos;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getUnsupported() {
+            return unsupported;
+        }
+
+        public long getCompileNanos() {
+            return compileNanos;
+        }
+
+        public long getEstimatedSavedNanos() {
+            return estimatedSavedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + " unsupported=" + unsupported + " compileNanos=" + compileNanos + " estimatedSavedNanos=" + estimatedSavedNanos;
+        }
+    }
+}
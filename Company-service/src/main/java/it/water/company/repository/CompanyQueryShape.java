@@ -0,0 +1,191 @@
+package it.water.company.repository;
+
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
+import it.water.core.api.repository.query.QueryOrderParameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Normalized form of a findAll filter and order.
+ * Every literal value in the filter definition is replaced by a placeholder so that requests
+ * which differ only by values share the same shape key, while values are kept apart to be bound later.
+ * Normalization is a single tokenization pass, the expensive translation into JPQL is done by CompanyQueryPlan
+ * only the first time a shape is seen.
+ */
+public final class CompanyQueryShape {
+    static final String VALUE_PLACEHOLDER = "?";
+    static final char ORDER_SEPARATOR = '|';
+    private static final String KEYWORD_LIKE = "LIKE";
+    private static final String KEYWORD_IN = "IN";
+
+    private final String key;
+    private final String definition;
+    private final List<Token> tokens;
+    private final List<String> values;
+    private final List<QueryOrderParameter> orderParameters;
+
+    private CompanyQueryShape(String key, String definition, List<Token> tokens, List<String> values, List<QueryOrderParameter> orderParameters) {
+        this.key = key;
+        this.definition = definition;
+        this.tokens = tokens;
+        this.values = values;
+        this.orderParameters = orderParameters;
+    }
+
+    /**
+     * @param filter query filter, can be null
+     * @param order  query order, can be null
+     * @return the normalized shape or null if the filter definition cannot be tokenized
+     */
+    public static CompanyQueryShape of(Query filter, QueryOrder order) {
+        String definition = (filter != null) ? filter.getDefinition() : null;
+        List<QueryOrderParameter> orderParameters = (order != null && order.getParametersOrder() != null) ? order.getParametersOrder() : Collections.emptyList();
+        return of(definition, orderParameters);
+    }
+
+    public static CompanyQueryShape of(String definition, List<QueryOrderParameter> orderParameters) {
+        List<Token> tokens = (definition == null || definition.isBlank()) ? Collections.emptyList() : tokenize(definition);
+        if (tokens == null)
+            return null;
+        StringBuilder keyBuilder = new StringBuilder();
+        List<String> values = new ArrayList<>();
+        boolean expectingValue = false;
+        int inListDepth = 0;
+        for (Token token : tokens) {
+            boolean isValue = token.type == TokenType.STRING || (token.type == TokenType.WORD && (expectingValue || inListDepth > 0));
+            if (isValue) {
+                values.add(token.text);
+                keyBuilder.append(VALUE_PLACEHOLDER);
+            } else {
+                keyBuilder.append(token.type == TokenType.WORD ? normalizeWord(token.text) : token.text);
+            }
+            keyBuilder.append(' ');
+            if (inListDepth > 0 && token.type == TokenType.RPAREN)
+                inListDepth--;
+            else if (expectingValue && token.type == TokenType.LPAREN)
+                inListDepth++;
+            expectingValue = !isValue && (token.type == TokenType.OPERATOR || (token.type == TokenType.WORD && KEYWORD_LIKE.equalsIgnoreCase(token.text)) || (token.type == TokenType.WORD && KEYWORD_IN.equalsIgnoreCase(token.text)));
+        }
+        keyBuilder.append(ORDER_SEPARATOR);
+        for (QueryOrderParameter orderParameter : orderParameters) {
+            keyBuilder.append(orderParameter.getName()).append(orderParameter.isAsc() ? " ASC," : " DESC,");
+        }
+        return new CompanyQueryShape(keyBuilder.toString(), definition, Collections.unmodifiableList(tokens), Collections.unmodifiableList(values), orderParameters);
+    }
+
+    /**
+     * @param key shape key
+     * @return the filter part of the key, with values replaced by placeholders.
+     * It is a valid filter definition producing the same shape when ordering is not specified.
+     */
+    public static String filterOf(String key) {
+        int separator = key.lastIndexOf(ORDER_SEPARATOR);
+        return (separator < 0 ? key : key.substring(0, separator)).trim();
+    }
+
+    private static String normalizeWord(String word) {
+        String upper = word.toUpperCase(Locale.ROOT);
+        switch (upper) {
+            case "AND":
+            case "OR":
+            case "NOT":
+            case KEYWORD_LIKE:
+            case KEYWORD_IN:
+                return upper;
+            default:
+                return word;
+        }
+    }
+
+    /**
+     * Splits the filter definition into tokens.
+     *
+     * @return tokens or null if the definition contains unsupported characters
+     */
+    private static List<Token> tokenize(String definition) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int length = definition.length();
+        while (i < length) {
+            char c = definition.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                tokens.add(new Token(TokenType.LPAREN, "("));
+                i++;
+            } else if (c == ')') {
+                tokens.add(new Token(TokenType.RPAREN, ")"));
+                i++;
+            } else if (c == ',') {
+                tokens.add(new Token(TokenType.COMMA, ","));
+                i++;
+            } else if (c == '\'' || c == '"') {
+                int end = definition.indexOf(c, i + 1);
+                if (end < 0)
+                    return null;
+                tokens.add(new Token(TokenType.STRING, definition.substring(i + 1, end)));
+                i = end + 1;
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                int end = i + 1;
+                if (end < length && (definition.charAt(end) == '=' || (c == '<' && definition.charAt(end) == '>')))
+                    end++;
+                String operator = definition.substring(i, end);
+                if ("!".equals(operator))
+                    return null;
+                tokens.add(new Token(TokenType.OPERATOR, operator));
+                i = end;
+            } else {
+                int end = i;
+                while (end < length && isWordChar(definition.charAt(end)))
+                    end++;
+                if (end == i)
+                    return null;
+                tokens.add(new Token(TokenType.WORD, definition.substring(i, end)));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isWordChar(char c) {
+        return !Character.isWhitespace(c) && "()',\"=<>!".indexOf(c) < 0;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDefinition() {
+        return definition;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    List<Token> getTokens() {
+        return tokens;
+    }
+
+    List<QueryOrderParameter> getOrderParameters() {
+        return orderParameters;
+    }
+
+    enum TokenType {
+        LPAREN, RPAREN, COMMA, OPERATOR, STRING, WORD
+    }
+
+    static final class Token {
+        final TokenType type;
+        final String text;
+
+        Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+}
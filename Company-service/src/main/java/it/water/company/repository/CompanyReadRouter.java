@@ -0,0 +1,114 @@
+package it.water.company.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a read can be served by the read-only persistence unit.
+ * Callers who wrote recently are pinned to the primary for a configurable window, so they always read their own writes.
+ * Anonymous callers, identified by a null caller, are never pinned: they cannot be told apart,
+ * so pinning one of them would move every anonymous read to the primary.
+ * Keeps track of how traffic has been routed.
+ */
+public class CompanyReadRouter {
+    private static final int PURGE_THRESHOLD = 10000;
+
+    private final long readYourWritesWindowMillis;
+    private final Map<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+
+    public CompanyReadRouter(long readYourWritesWindowMillis) {
+        this.readYourWritesWindowMillis = readYourWritesWindowMillis;
+    }
+
+    /**
+     * @param caller    identifier of the caller, usually the logged username, null if anonymous
+     * @param hasReplica true if a read-only persistence unit is configured
+     * @return true if the read should go to the read-only persistence unit
+     */
+    public boolean routeToReplica(String caller, boolean hasReplica) {
+        boolean replica = hasReplica && (caller == null || !isPinned(caller));
+        if (replica)
+            replicaReads.increment();
+        else
+            primaryReads.increment();
+        return replica;
+    }
+
+    /**
+     * Pins the caller to the primary persistence unit for the read-your-writes window.
+     *
+     * @param caller identifier of the caller, null if anonymous
+     */
+    public void recordWrite(String caller) {
+        writes.increment();
+        if (caller == null || readYourWritesWindowMillis <= 0)
+            return;
+        if (pinnedUntil.size() > PURGE_THRESHOLD)
+            purgeExpired();
+        pinnedUntil.put(caller, System.currentTimeMillis() + readYourWritesWindowMillis);
+    }
+
+    private boolean isPinned(String caller) {
+        Long until = pinnedUntil.get(caller);
+        if (until == null)
+            return false;
+        if (until < System.currentTimeMillis()) {
+            pinnedUntil.remove(caller, until);
+            return false;
+        }
+        return true;
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        pinnedUntil.entrySet().removeIf(entry -> entry.getValue() < now);
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(primaryReads.sum(), replicaReads.sum(), writes.sum());
+    }
+
+    /**
+     * Snapshot of routed traffic.
+     */
+    public static final class Statistics {
+        private final long primaryReads;
+        private final long replicaReads;
+        private final long writes;
+
+        Statistics(long primaryReads, long replicaReads, long writes) {
+            this.primaryReads = primaryReads;
+            this.replicaReads = replicaReads;
+            this.writes = writes;
+        }
+
+        public long getPrimaryReads() {
+            return primaryReads;
+        }
+
+        public long getReplicaReads() {
+            return replicaReads;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        /**
+         * @return share of reads served by the read-only persistence unit, between 0 and 1
+         */
+        public double getReplicaReadShare() {
+            long reads = primaryReads + replicaReads;
+            return reads == 0 ? 0 : replicaReads / (double) reads;
+        }
+
+        @Override
+        public String toString() {
+            return "primaryReads=" + primaryReads + " replicaReads=" + replicaReads + " writes=" + writes + " replicaReadShare=" + getReplicaReadShare();
+        }
+    }
+}
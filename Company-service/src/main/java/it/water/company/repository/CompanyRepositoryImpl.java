@@ -1,21 +1,589 @@
 package it.water.company.repository;
 
+import it.water.company.api.CompanyOptions;
 import it.water.company.api.CompanyRepository;
+import it.water.company.model.CompactCompanies;
+import it.water.company.model.CompactCompany;
 import it.water.company.model.Company;
+import it.water.company.trace.CompanyOperationTrace;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.repository.entity.model.PaginatedResult;
 import it.water.repository.jpa.WaterJpaRepositoryImpl;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Transactional;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * @Generated by Water Generator
  * Repository Class for Company entity.
+ * Writes always go to the company persistence unit, reads can be routed to a read-only persistence unit
+ * configured with CompanyConstants#PROP_READ_PERSISTENCE_UNIT.
  */
 @FrameworkComponent
 public class CompanyRepositoryImpl extends WaterJpaRepositoryImpl<Company> implements CompanyRepository {
+    private static final Logger log = LoggerFactory.getLogger(CompanyRepositoryImpl.class);
 
     private static final String COMPANY_PERSISTENCE_UNIT = "company-persistence-unit";
+    private static final String COMPACT_SELECT_JPQL = "select e.id, e.businessName, e.invoiceAddress, e.city, e.postalCode, e.nation, e.vatNumber, e.ownerUserId from Company e";
+    private static final String COMPACT_AREA_JPQL = COMPACT_SELECT_JPQL + " where e.nation = :nation and e.postalCode = :postalCode";
+    //served by the company_area_idx index, ids keep the order stable across scans
+    private static final String COMPACT_BY_AREA_JPQL = COMPACT_SELECT_JPQL + " order by e.nation, e.postalCode, e.id";
+    private static final String FIND_BY_IDS_JPQL = "select e from Company e where e.id in :ids";
+    private static final String VAT_NUMBER_EXISTS_JPQL = "select e.id from Company e where e.vatNumber = :vatNumber and e.id <> :excludedId";
+    private static final String VAT_NUMBER_BY_ID_JPQL = "select e.vatNumber from Company e where e.id = :id";
+    private static final String VAT_NUMBER_COUNT_JPQL = "select count(e.vatNumber) from Company e";
+    //reads issued while a write is in progress on the same thread must see the primary unit
+    private static final ThreadLocal<Boolean> WRITE_IN_PROGRESS = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    //set while the default findAll serves a count-free request, the total it asks for is never used
+    private static final ThreadLocal<Boolean> COUNT_SUPPRESSED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    @Inject
+    @Setter
+    private Runtime runtime;
+
+    private volatile CompanyQueryPlanCache queryPlanCache;
+
+    private volatile CompanyCountCache countCache;
+
+    private volatile CompanyReadRouter readRouter;
+
+    private volatile ReadReplica readReplica;
+
+    private volatile boolean readReplicaResolved;
+
+    private final LongAdder defaultCountFreeRequests = new LongAdder();
+
+    private final LongAdder countQueries = new LongAdder();
 
     public CompanyRepositoryImpl() {
         super(Company.class, COMPANY_PERSISTENCE_UNIT);
     }
 
+    @Override
+    public Company persist(Company entity) {
+        return write(() -> {
+            int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, "insert Company");
+            try {
+                return super.persist(entity);
+            } finally {
+                CompanyOperationTrace.exit(phase, 1);
+            }
+        });
+    }
+
+    @Override
+    public Company update(Company entity) {
+        return write(() -> super.update(entity));
+    }
+
+    @Override
+    public void remove(long id) {
+        write(() -> {
+            super.remove(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(Company entity) {
+        write(() -> {
+            super.remove(entity);
+            return null;
+        });
+    }
+
+    private <R> R write(Supplier<R> operation) {
+        boolean nested = WRITE_IN_PROGRESS.get();
+        WRITE_IN_PROGRESS.set(Boolean.TRUE);
+        try {
+            R result = operation.get();
+            getReadRouter().recordWrite(currentCaller());
+            return result;
+        } finally {
+            if (!nested)
+                WRITE_IN_PROGRESS.remove();
+        }
+    }
+
+    @Override
+    public Company find(long id) {
+        ReadReplica replica = routeRead();
+        return replica != null ? replica.find(id) : super.find(id);
+    }
+
+    @Override
+    public Company find(Query filter) {
+        ReadReplica replica = routeRead();
+        return replica != null ? replica.find(filter) : super.find(filter);
+    }
+
+    /**
+     * Not executed while the default findAll serves a count-free request.
+     */
+    @Override
+    public long countAll(Query filter) {
+        if (COUNT_SUPPRESSED.get())
+            return Long.MAX_VALUE;
+        countQueries.increment();
+        ReadReplica replica = routeRead();
+        return replica != null ? replica.countAll(filter) : super.countAll(filter);
+    }
+
+    /**
+     * Filtered findAll served through the query plan cache.
+     * Filters are normalized into shapes, each shape is translated into JPQL once and then reused binding only values.
+     * Shapes which cannot be compiled, and every filter when the cache is disabled, fall back to the default implementation.
+     * The COUNT query is skipped when invoked inside CompanyPaginationScope#withoutCount.
+     */
+    @Override
+    public PaginableResult<Company> findAll(int delta, int page, Query filter, QueryOrder queryOrder) {
+        return findAll(delta, page, filter, queryOrder, !CompanyPaginationScope.isCountSkipped());
+    }
+
+    @Override
+    public PaginableResult<Company> findAll(int delta, int page, Query filter, QueryOrder queryOrder, boolean withCount) {
+        ReadReplica replica = routeRead();
+        CompanyQueryPlanCache cache = getQueryPlanCache();
+        CompanyQueryShape shape = cache.isEnabled() ? CompanyQueryShape.of(filter, queryOrder) : null;
+        CompanyQueryPlan plan = (shape != null) ? cache.getPlan(shape) : null;
+        List<Object> values = (plan != null && plan.isSupported()) ? plan.bindValues(shape.getValues()) : null;
+        if (values == null) {
+            log.debug("Filter {} not compiled, using default findAll", filter);
+            if (!withCount && delta > 0 && page > 0)
+                return defaultFindAllWithoutCount(replica, delta, page, filter, queryOrder);
+            return defaultFindAll(replica, delta, page, filter, queryOrder);
+        }
+        if (!withCount && delta > 0 && page > 0)
+            return read(replica, entityManager -> executePlanWithoutCount(entityManager, shape, plan, values, delta, page));
+        return read(replica, entityManager -> executePlan(entityManager, shape, plan, values, delta, page));
+    }
+
+    private PaginableResult<Company> defaultFindAll(ReadReplica replica, int delta, int page, Query filter, QueryOrder queryOrder) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, "default findAll");
+        long rows = -1;
+        try {
+            PaginableResult<Company> result = replica != null ? replica.findAll(delta, page, filter, queryOrder) : super.findAll(delta, page, filter, queryOrder);
+            rows = result.getResults().size();
+            return result;
+        } finally {
+            CompanyOperationTrace.exit(phase, rows);
+        }
+    }
+
+    /**
+     * Count-free findAll of a filter the query plan cache cannot compile, translated by the default findAll.
+     * The default findAll cannot read delta + 1 rows, so the page is read as is and a second read of a single row,
+     * the first one of the next page, tells whether a next page exists. countAll is suppressed during both reads.
+     */
+    private PaginableResult<Company> defaultFindAllWithoutCount(ReadReplica replica, int delta, int page, Query filter, QueryOrder queryOrder) {
+        defaultCountFreeRequests.increment();
+        boolean suppressed = COUNT_SUPPRESSED.get();
+        COUNT_SUPPRESSED.set(Boolean.TRUE);
+        try {
+            List<Company> results = new ArrayList<>(defaultFindAll(replica, delta, page, filter, queryOrder).getResults());
+            //with one row per page, page number n is the n-th row
+            long nextRow = (long) page * delta + 1;
+            boolean hasMore = nextRow <= Integer.MAX_VALUE && results.size() == delta
+                    && !defaultFindAll(replica, 1, (int) nextRow, filter, queryOrder).getResults().isEmpty();
+            int nextPage = hasMore ? page + 1 : 1;
+            return new PaginatedResult<>(hasMore ? page + 1 : page, page, nextPage, delta, results);
+        } finally {
+            COUNT_SUPPRESSED.set(suppressed);
+        }
+    }
+
+    private PaginableResult<Company> executePlan(EntityManager entityManager, CompanyQueryShape shape, CompanyQueryPlan plan, List<Object> values, int delta, int page) {
+        boolean paginated = delta > 0 && page > 0;
+        TypedQuery<Company> selectQuery = bind(entityManager.createQuery(plan.getSelectJpql(), Company.class), values);
+        int numPages = 1;
+        if (paginated) {
+            int countPhase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, plan.getCountJpql());
+            countQueries.increment();
+            long count;
+            try {
+                count = bind(entityManager.createQuery(plan.getCountJpql(), Long.class), values).getSingleResult();
+            } finally {
+                CompanyOperationTrace.exit(countPhase, 1);
+            }
+            getCountCache().put(shape, values, count);
+            numPages = (int) Math.ceil(count / (double) delta);
+            selectQuery.setFirstResult((page - 1) * delta);
+            selectQuery.setMaxResults(delta);
+        }
+        int nextPage = (page <= numPages - 1) ? page + 1 : 1;
+        return new PaginatedResult<>(numPages, page, nextPage, delta, tracedResultList(selectQuery, plan));
+    }
+
+    /**
+     * Fetches delta + 1 rows to find out whether a next page exists, without counting the filtered set.
+     * The number of pages is taken from a recently cached total when available, otherwise it is the lowest value
+     * consistent with what has been read so far.
+     */
+    private PaginableResult<Company> executePlanWithoutCount(EntityManager entityManager, CompanyQueryShape shape, CompanyQueryPlan plan, List<Object> values, int delta, int page) {
+        TypedQuery<Company> selectQuery = bind(entityManager.createQuery(plan.getSelectJpql(), Company.class), values);
+        selectQuery.setFirstResult((page - 1) * delta);
+        selectQuery.setMaxResults(delta + 1);
+        List<Company> results = tracedResultList(selectQuery, plan);
+        boolean hasMore = results.size() > delta;
+        if (hasMore)
+            results = results.subList(0, delta);
+        int numPages = hasMore ? page + 1 : page;
+        long approximateTotal = getCountCache().get(shape, values);
+        if (approximateTotal >= 0)
+            numPages = Math.max(numPages, (int) Math.ceil(approximateTotal / (double) delta));
+        int nextPage = hasMore ? page + 1 : 1;
+        return new PaginatedResult<>(numPages, page, nextPage, delta, results);
+    }
+
+    private static List<Company> tracedResultList(TypedQuery<Company> selectQuery, CompanyQueryPlan plan) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, plan.getSelectJpql());
+        long rows = -1;
+        try {
+            List<Company> results = selectQuery.getResultList();
+            rows = results.size();
+            return results;
+        } finally {
+            CompanyOperationTrace.exit(phase, rows);
+        }
+    }
+
+    @Override
+    public boolean existsByVatNumber(String vatNumber, long excludedId) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, VAT_NUMBER_EXISTS_JPQL);
+        long rows = -1;
+        try {
+            List<Long> ids = txExpr(Transactional.TxType.SUPPORTS, entityManager -> entityManager
+                    .createQuery(VAT_NUMBER_EXISTS_JPQL, Long.class)
+                    .setParameter("vatNumber", vatNumber)
+                    .setParameter("excludedId", excludedId)
+                    .setMaxResults(1)
+                    .getResultList());
+            rows = ids.size();
+            return !ids.isEmpty();
+        } finally {
+            CompanyOperationTrace.exit(phase, rows);
+        }
+    }
+
+    @Override
+    public String findVatNumber(long id) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, VAT_NUMBER_BY_ID_JPQL);
+        long rows = -1;
+        try {
+            List<String> vatNumbers = txExpr(Transactional.TxType.SUPPORTS, entityManager -> entityManager
+                    .createQuery(VAT_NUMBER_BY_ID_JPQL, String.class)
+                    .setParameter("id", id)
+                    .getResultList());
+            rows = vatNumbers.size();
+            return vatNumbers.isEmpty() ? null : vatNumbers.get(0);
+        } finally {
+            CompanyOperationTrace.exit(phase, rows);
+        }
+    }
+
+    @Override
+    public long countVatNumbers() {
+        return txExpr(Transactional.TxType.SUPPORTS, entityManager -> entityManager
+                .createQuery(VAT_NUMBER_COUNT_JPQL, Long.class)
+                .getSingleResult());
+    }
+
+    @Override
+    public void forEachVatNumber(Consumer<String> consumer) {
+        txExpr(Transactional.TxType.SUPPORTS, entityManager -> {
+            try (Stream<String> vatNumbers = entityManager.createQuery("select e.vatNumber from Company e", String.class).getResultStream()) {
+                vatNumbers.forEach(consumer);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Scalar projection over the compiled filter, rows are streamed into the compact model so
+     * no entity is ever attached to the persistence context.
+     * Filters the query plan cannot compile are rejected: loading them through the default findAll would attach
+     * every matching entity, which is what the compact model exists to avoid.
+     * The filter is compiled on every call, outside the findAll plan cache: it is a bulk load, and it must not count
+     * as a findAll request in the cache statistics nor among the filters replayed by the warm-up.
+     */
+    @Override
+    public CompactCompanies findAllCompact(Query filter) {
+        ReadReplica replica = routeRead();
+        CompanyQueryShape shape = CompanyQueryShape.of(filter, null);
+        CompanyQueryPlan plan = (shape != null) ? CompanyQueryPlan.compile(shape) : null;
+        List<Object> values = (plan != null && plan.isSupported()) ? plan.bindValues(shape.getValues()) : null;
+        if (values == null)
+            throw new WaterRuntimeException("Filter not supported by the compact read model: " + filter.getDefinition());
+        String jpql = COMPACT_SELECT_JPQL
+                + (plan.getWhereClause().isEmpty() ? "" : " where " + plan.getWhereClause());
+        return read(replica, entityManager -> {
+            CompactCompanies compactCompanies = new CompactCompanies();
+            try (Stream<Object[]> rows = bind(entityManager.createQuery(jpql, Object[].class), values).getResultStream()) {
+                rows.forEach(row -> addCompactRow(compactCompanies, row));
+            }
+            return compactCompanies;
+        });
+    }
+
+    /**
+     * Chunks are padded to the configured chunk size, so every chunk runs the same statement.
+     */
+    @Override
+    public List<Company> findAllByIds(Collection<Long> ids) {
+        List<Long> distinctIds = CompanyIdBatches.distinct(ids);
+        if (distinctIds.isEmpty())
+            return Collections.emptyList();
+        List<List<Long>> chunks = CompanyIdBatches.chunks(distinctIds, companyOptions.getBatchGetChunkSize());
+        return read(routeRead(), entityManager -> {
+            TypedQuery<Company> query = entityManager.createQuery(FIND_BY_IDS_JPQL, Company.class);
+            List<Company> companies = new ArrayList<>(distinctIds.size());
+            for (List<Long> chunk : chunks) {
+                int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, FIND_BY_IDS_JPQL);
+                long rows = -1;
+                try {
+                    List<Company> results = query.setParameter("ids", chunk).getResultList();
+                    rows = results.size();
+                    companies.addAll(results);
+                } finally {
+                    CompanyOperationTrace.exit(phase, rows);
+                }
+            }
+            return companies;
+        });
+    }
+
+    @Override
+    public CompactCompanies findAllCompactByArea(String nation, String postalCode, int maxResults) {
+        return read(routeRead(), entityManager -> {
+            CompactCompanies compactCompanies = new CompactCompanies();
+            int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, COMPACT_AREA_JPQL);
+            TypedQuery<Object[]> query = entityManager.createQuery(COMPACT_AREA_JPQL, Object[].class)
+                    .setParameter("nation", nation)
+                    .setParameter("postalCode", postalCode);
+            if (maxResults > 0)
+                query.setMaxResults(maxResults);
+            try (Stream<Object[]> rows = query.getResultStream()) {
+                rows.forEach(row -> addCompactRow(compactCompanies, row));
+            } finally {
+                CompanyOperationTrace.exit(phase, compactCompanies.size());
+            }
+            return compactCompanies;
+        });
+    }
+
+    /**
+     * Full table scan meant for batch jobs, it always goes to the read-only persistence unit when one is configured.
+     */
+    @Override
+    public void forEachCompanyArea(Consumer<CompactCompanies> consumer) {
+        read(getReadReplica(), entityManager -> {
+            try (Stream<Object[]> rows = entityManager.createQuery(COMPACT_BY_AREA_JPQL, Object[].class).getResultStream()) {
+                CompactCompanies[] area = {new CompactCompanies()};
+                rows.forEach(row -> {
+                    if (area[0].size() > 0 && !sameArea(area[0].getCompanies().get(area[0].size() - 1), row)) {
+                        consumer.accept(area[0]);
+                        area[0] = new CompactCompanies();
+                    }
+                    addCompactRow(area[0], row);
+                });
+                if (area[0].size() > 0)
+                    consumer.accept(area[0]);
+            }
+            return null;
+        });
+    }
+
+    private static boolean sameArea(CompactCompany company, Object[] row) {
+        return Objects.equals(company.getNation(), row[5]) && Objects.equals(company.getPostalCode(), row[4]);
+    }
+
+    private static void addCompactRow(CompactCompanies compactCompanies, Object[] row) {
+        compactCompanies.add((Long) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4], (String) row[5], (String) row[6], (Long) row[7]);
+    }
+
+    @Override
+    public List<String> getRecentFilterShapes(int max) {
+        Set<String> filters = new LinkedHashSet<>();
+        //same filter with different orderings is compiled once
+        for (String key : getQueryPlanCache().getRecentKeys(Integer.MAX_VALUE)) {
+            if (filters.size() >= max)
+                break;
+            filters.add(CompanyQueryShape.filterOf(key));
+        }
+        return new ArrayList<>(filters);
+    }
+
+    /**
+     * Creating the queries lets the persistence provider parse and cache them, values are never bound so nothing is executed.
+     * Nothing is compiled while the query plan cache is disabled.
+     */
+    @Override
+    public boolean precompileFilterShape(String filterShape) {
+        if (!getQueryPlanCache().isEnabled())
+            return false;
+        CompanyQueryShape shape = CompanyQueryShape.of(filterShape, Collections.emptyList());
+        CompanyQueryPlan plan = (shape != null) ? getQueryPlanCache().preload(shape) : null;
+        if (plan == null || !plan.isSupported())
+            return false;
+        return read(getReadReplica(), entityManager -> {
+            entityManager.createQuery(plan.getSelectJpql(), Company.class);
+            entityManager.createQuery(plan.getCountJpql(), Long.class);
+            return true;
+        });
+    }
+
+    private static <R> TypedQuery<R> bind(TypedQuery<R> query, List<Object> values) {
+        for (int i = 0; i < values.size(); i++) {
+            query.setParameter(CompanyQueryPlan.parameterName(i), values.get(i));
+        }
+        return query;
+    }
+
+    /**
+     * Runs a read only function on the given replica, or on the primary persistence unit if replica is null.
+     */
+    private <R> R read(ReadReplica replica, Function<EntityManager, R> function) {
+        if (replica != null)
+            return replica.read(function);
+        return txExpr(Transactional.TxType.SUPPORTS, function);
+    }
+
+    /**
+     * @return the read replica the current read must be routed to, null if it must go to the primary unit
+     */
+    private ReadReplica routeRead() {
+        ReadReplica replica = WRITE_IN_PROGRESS.get() ? null : getReadReplica();
+        return getReadRouter().routeToReplica(currentCaller(), replica != null) ? replica : null;
+    }
+
+    /**
+     * @return logged username, null for anonymous callers which are never pinned to the primary unit
+     */
+    private String currentCaller() {
+        if (runtime == null || runtime.getSecurityContext() == null)
+            return null;
+        return runtime.getSecurityContext().getLoggedUsername();
+    }
+
+    private ReadReplica getReadReplica() {
+        if (!readReplicaResolved) {
+            synchronized (this) {
+                if (!readReplicaResolved) {
+                    String readPersistenceUnit = companyOptions.getReadPersistenceUnit();
+                    if (readPersistenceUnit != null && !readPersistenceUnit.isBlank()) {
+                        log.info("Company reads routed to persistence unit {}", readPersistenceUnit);
+                        readReplica = new ReadReplica(readPersistenceUnit);
+                    }
+                    readReplicaResolved = true;
+                }
+            }
+        }
+        return readReplica;
+    }
+
+    /**
+     * @return number of count-free findAll requests served by the default findAll, because their filter could not be compiled
+     */
+    public long getDefaultCountFreeRequests() {
+        return defaultCountFreeRequests.sum();
+    }
+
+    @Override
+    public long getCountQueries() {
+        return countQueries.sum();
+    }
+
+    /**
+     * @return read/write router, exposing routing statistics
+     */
+    public CompanyReadRouter getReadRouter() {
+        CompanyReadRouter router = readRouter;
+        if (router == null) {
+            synchronized (this) {
+                router = readRouter;
+                if (router == null) {
+                    router = new CompanyReadRouter(companyOptions.getReadYourWritesWindowMillis());
+                    readRouter = router;
+                }
+            }
+        }
+        return router;
+    }
+
+    /**
+     * @return findAll query plan cache, created on first use with the configured size
+     */
+    public CompanyQueryPlanCache getQueryPlanCache() {
+        CompanyQueryPlanCache cache = queryPlanCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = queryPlanCache;
+                if (cache == null) {
+                    cache = new CompanyQueryPlanCache(companyOptions.getQueryPlanCacheSize());
+                    queryPlanCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    private CompanyCountCache getCountCache() {
+        CompanyCountCache cache = countCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = countCache;
+                if (cache == null) {
+                    cache = new CompanyCountCache(companyOptions.getCountCacheTtlMillis());
+                    countCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Company repository bound to the read-only persistence unit, used only for queries.
+     */
+    private static class ReadReplica extends WaterJpaRepositoryImpl<Company> {
+
+        private ReadReplica(String persistenceUnit) {
+            super(Company.class, persistenceUnit);
+        }
+
+        @Override
+        public long countAll(Query filter) {
+            return COUNT_SUPPRESSED.get() ? Long.MAX_VALUE : super.countAll(filter);
+        }
+
+        private <R> R read(Function<EntityManager, R> function) {
+            return txExpr(Transactional.TxType.SUPPORTS, function);
+        }
+    }
+
 }
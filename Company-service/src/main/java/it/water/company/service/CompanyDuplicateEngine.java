@@ -0,0 +1,287 @@
+package it.water.company.service;
+
+import it.water.company.model.CompactCompanies;
+import it.water.company.model.CompactCompany;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateReport;
+import it.water.core.model.exceptions.WaterRuntimeException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Fuzzy duplicate detection over company business names.
+ * Candidates are blocked first by area, nation and postal code, then by the prefixes and suffixes of their normalized name tokens:
+ * only companies sharing an area and a token prefix or suffix are scored, so a typo is caught unless it hits both ends of every token.
+ * Blocks larger than maxBlockSize are purged, so the comparisons of a scan are bounded by companies * maxBlockSize
+ * instead of growing with the square of the table size.
+ * Each pair is scored only in the first block its companies share, so no set of compared pairs is needed.
+ */
+public class CompanyDuplicateEngine {
+    static final int KEY_LENGTH = 4;
+    private static final double WINKLER_SCALING = 0.1;
+    private static final int WINKLER_MAX_PREFIX = 4;
+
+    private final double threshold;
+    private final int maxBlockSize;
+
+    /**
+     * @param threshold    min similarity, between 0 and 1, for two companies to be reported as duplicates
+     * @param maxBlockSize blocks with more companies are purged
+     */
+    public CompanyDuplicateEngine(double threshold, int maxBlockSize) {
+        this.threshold = threshold;
+        this.maxBlockSize = Math.max(2, maxBlockSize);
+    }
+
+    /**
+     * Incremental check of a single company against the companies of its area.
+     *
+     * @param id           company id
+     * @param businessName company business name
+     * @param area         companies with the same nation and postal code, it may contain the company itself
+     * @return likely duplicates, most similar first
+     */
+    public List<CompanyDuplicate> findDuplicates(long id, String businessName, CompactCompanies area) {
+        Candidate target = new Candidate(id, businessName);
+        List<CompanyDuplicate> duplicates = new ArrayList<>();
+        for (CompactCompany company : area) {
+            if (company.getId() == id)
+                continue;
+            Candidate other = new Candidate(company.getId(), company.getBusinessName());
+            if (firstCommonKey(target.keys, other.keys, null) == null)
+                continue;
+            double score = score(target, other);
+            if (score >= threshold)
+                duplicates.add(new CompanyDuplicate(id, other.id, target.businessName, other.businessName, score));
+        }
+        duplicates.sort(Comparator.comparingDouble(CompanyDuplicate::getScore).reversed());
+        return duplicates;
+    }
+
+    /**
+     * Scans every area supplied by the given source, scoring areas in parallel on the given workers.
+     * The source is consumed on the calling thread, at most two areas per worker are kept in memory at the same time.
+     *
+     * @param areaSource    supplies every area to the consumer it receives, typically by streaming the company table
+     * @param maxReportSize max number of duplicates kept in the report
+     * @param workers       executor scoring the areas, shared across scans
+     * @param parallelism   max number of areas scored at the same time, usually the number of worker threads
+     * @return the scan report
+     */
+    public CompanyDuplicateReport scan(Consumer<Consumer<CompactCompanies>> areaSource, int maxReportSize, Executor workers, int parallelism) {
+        long start = System.currentTimeMillis();
+        int permits = Math.max(1, parallelism) * 2;
+        ScanStatistics statistics = new ScanStatistics();
+        ConcurrentLinkedQueue<CompanyDuplicate> duplicates = new ConcurrentLinkedQueue<>();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Semaphore pending = new Semaphore(permits);
+        try {
+            areaSource.accept(area -> {
+                if (failure.get() != null)
+                    return;
+                pending.acquireUninterruptibly();
+                try {
+                    workers.execute(() -> {
+                        try {
+                            scanArea(area, statistics, duplicate -> {
+                                if (statistics.found.incrementAndGet() <= maxReportSize)
+                                    duplicates.add(duplicate);
+                            });
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    pending.release();
+                    throw e;
+                }
+            });
+        } finally {
+            //every area still being scored holds a permit
+            pending.acquireUninterruptibly(permits);
+        }
+        if (failure.get() != null)
+            throw new WaterRuntimeException("Company duplicate scan failed: " + failure.get().getMessage());
+        List<CompanyDuplicate> report = new ArrayList<>(duplicates);
+        report.sort(Comparator.comparingDouble(CompanyDuplicate::getScore).reversed());
+        return new CompanyDuplicateReport(statistics.scanned.sum(), statistics.areas.sum(), statistics.comparisons.sum(),
+                statistics.purgedBlocks.sum(), statistics.found.get(), System.currentTimeMillis() - start, report);
+    }
+
+    /**
+     * Scores every pair of companies of the area sharing a block.
+     */
+    void scanArea(CompactCompanies area, ScanStatistics statistics, Consumer<CompanyDuplicate> sink) {
+        statistics.areas.increment();
+        statistics.scanned.add(area.size());
+        Map<String, List<Candidate>> blocks = new HashMap<>();
+        for (CompactCompany company : area) {
+            Candidate candidate = new Candidate(company.getId(), company.getBusinessName());
+            for (String key : candidate.keys) {
+                blocks.computeIfAbsent(key, k -> new ArrayList<>()).add(candidate);
+            }
+        }
+        Set<String> purged = new HashSet<>();
+        blocks.forEach((key, block) -> {
+            if (block.size() > maxBlockSize)
+                purged.add(key);
+        });
+        statistics.purgedBlocks.add(purged.size());
+        for (Map.Entry<String, List<Candidate>> block : blocks.entrySet()) {
+            if (purged.contains(block.getKey()))
+                continue;
+            List<Candidate> candidates = block.getValue();
+            for (int i = 0; i < candidates.size(); i++) {
+                Candidate a = candidates.get(i);
+                for (int j = i + 1; j < candidates.size(); j++) {
+                    Candidate b = candidates.get(j);
+                    //the pair belongs to the first block both companies share, it is scored only there
+                    if (!block.getKey().equals(firstCommonKey(a.keys, b.keys, purged)))
+                        continue;
+                    statistics.comparisons.increment();
+                    double score = score(a, b);
+                    if (score >= threshold)
+                        sink.accept(new CompanyDuplicate(a.id, b.id, a.businessName, b.businessName, score));
+                }
+            }
+        }
+    }
+
+    /**
+     * Similarity of two business names: the best of Jaro-Winkler over the sorted normalized names,
+     * catching typos, and the average best Jaro-Winkler of each token, catching missing or extra words.
+     */
+    static double score(Candidate a, Candidate b) {
+        if (a.tokens.length == 0 || b.tokens.length == 0)
+            return 0;
+        double whole = jaroWinkler(a.joined, b.joined);
+        double tokens = (tokenSimilarity(a.tokens, b.tokens) + tokenSimilarity(b.tokens, a.tokens)) / 2;
+        return Math.max(whole, tokens);
+    }
+
+    private static double tokenSimilarity(String[] from, String[] to) {
+        double sum = 0;
+        for (String token : from) {
+            double best = 0;
+            for (String other : to) {
+                best = Math.max(best, jaroWinkler(token, other));
+            }
+            sum += best;
+        }
+        return sum / from.length;
+    }
+
+    static double jaroWinkler(String s1, String s2) {
+        if (s1.equals(s2))
+            return 1;
+        int len1 = s1.length();
+        int len2 = s2.length();
+        if (len1 == 0 || len2 == 0)
+            return 0;
+        int window = Math.max(0, Math.max(len1, len2) / 2 - 1);
+        boolean[] matched1 = new boolean[len1];
+        boolean[] matched2 = new boolean[len2];
+        int matches = 0;
+        for (int i = 0; i < len1; i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(len2 - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!matched2[j] && s1.charAt(i) == s2.charAt(j)) {
+                    matched1[i] = true;
+                    matched2[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0)
+            return 0;
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < len1; i++) {
+            if (!matched1[i])
+                continue;
+            while (!matched2[j])
+                j++;
+            if (s1.charAt(i) != s2.charAt(j))
+                transpositions++;
+            j++;
+        }
+        double m = matches;
+        double jaro = (m / len1 + m / len2 + (m - transpositions / 2d) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(WINKLER_MAX_PREFIX, Math.min(len1, len2)) && s1.charAt(prefix) == s2.charAt(prefix))
+            prefix++;
+        return jaro + prefix * WINKLER_SCALING * (1 - jaro);
+    }
+
+    /**
+     * @return the first key, in sorted order, shared by both arrays and not purged, null if there is none
+     */
+    private static String firstCommonKey(String[] keys1, String[] keys2, Set<String> purged) {
+        int i = 0;
+        int j = 0;
+        while (i < keys1.length && j < keys2.length) {
+            int cmp = keys1[i].compareTo(keys2[j]);
+            if (cmp == 0) {
+                if (purged == null || !purged.contains(keys1[i]))
+                    return keys1[i];
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Company as seen by the engine: normalized tokens and blocking keys, both sorted.
+     */
+    static final class Candidate {
+        private final long id;
+        private final String businessName;
+        private final String[] tokens;
+        private final String joined;
+        private final String[] keys;
+
+        Candidate(long id, String businessName) {
+            this.id = id;
+            this.businessName = businessName;
+            this.tokens = CompanyNameNormalizer.tokens(businessName);
+            this.joined = String.join(" ", tokens);
+            this.keys = Arrays.stream(tokens)
+                    .flatMap(token -> token.length() <= KEY_LENGTH ? Stream.of(token)
+                            : Stream.of(token.substring(0, KEY_LENGTH) + '<', '>' + token.substring(token.length() - KEY_LENGTH)))
+                    .distinct()
+                    .sorted()
+                    .toArray(String[]::new);
+        }
+    }
+
+    static final class ScanStatistics {
+        private final LongAdder scanned = new LongAdder();
+        private final LongAdder areas = new LongAdder();
+        private final LongAdder comparisons = new LongAdder();
+        private final LongAdder purgedBlocks = new LongAdder();
+        private final AtomicLong found = new AtomicLong();
+    }
+}
@@ -0,0 +1,83 @@
+package it.water.company.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded lookup counter of company ids.
+ * Counters are halved every capacity * AGING_PERIOD lookups, so the ranking follows recent traffic.
+ * When the tracked ids reach the capacity the least requested half is forgotten,
+ * so a burst of ids requested once cannot push hot ids out.
+ */
+public class CompanyHotIds {
+    private static final int AGING_PERIOD = 10;
+
+    private final int capacity;
+    private final Map<Long, LongAdder> hits = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+
+    /**
+     * @param capacity max number of tracked ids
+     */
+    public CompanyHotIds(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public void record(long id) {
+        if (lookups.incrementAndGet() % ((long) capacity * AGING_PERIOD) == 0)
+            age();
+        LongAdder counter = hits.get(id);
+        if (counter == null) {
+            if (hits.size() >= capacity)
+                evict();
+            counter = hits.computeIfAbsent(id, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Seeds an id with the given weight, used to restore a ranking stored by a previous run.
+     */
+    public void seed(long id, long weight) {
+        hits.computeIfAbsent(id, key -> new LongAdder()).add(weight);
+    }
+
+    /**
+     * @param max max number of ids
+     * @return most requested ids, most requested first
+     */
+    public List<Long> top(int max) {
+        List<Map.Entry<Long, Long>> snapshot = new ArrayList<>(hits.size());
+        hits.forEach((id, counter) -> snapshot.add(Map.entry(id, counter.sum())));
+        return snapshot.stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .limit(Math.max(0, max))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return hits.size();
+    }
+
+    private synchronized void age() {
+        hits.entrySet().removeIf(entry -> {
+            long halved = entry.getValue().sumThenReset() / 2;
+            entry.getValue().add(halved);
+            return halved == 0;
+        });
+    }
+
+    private synchronized void evict() {
+        if (hits.size() < capacity)
+            return;
+        List<Long> ranking = top(hits.size());
+        ranking.subList(ranking.size() / 2, ranking.size()).forEach(hits::remove);
+    }
+}
@@ -0,0 +1,53 @@
+package it.water.company.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes business names for duplicate detection:
+ * lower case, accents and punctuation removed, legal forms dropped, tokens sorted so word order does not matter.
+ */
+public final class CompanyNameNormalizer {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+    //dotted legal forms such as s.r.l. are joined before splitting
+    private static final Pattern DOTTED_ACRONYM = Pattern.compile("\\b((?:[a-z]\\.){2,}[a-z]?\\.?)");
+    private static final Set<String> LEGAL_FORMS = Set.of(
+            "srl", "srls", "spa", "sas", "snc", "sapa", "scarl", "scrl", "coop", "onlus",
+            "ltd", "limited", "plc", "llc", "llp", "inc", "corp", "corporation", "co", "company",
+            "gmbh", "ag", "kg", "ohg", "ug", "sa", "sarl", "sl", "bv", "nv", "ab", "as", "oy",
+            "the", "and", "di", "de", "del", "della", "e", "und", "et", "y", "of");
+    private static final String[] NO_TOKENS = new String[0];
+
+    private CompanyNameNormalizer() {
+    }
+
+    /**
+     * @param businessName business name, can be null
+     * @return normalized tokens, sorted
+     */
+    public static String[] tokens(String businessName) {
+        if (businessName == null || businessName.isBlank())
+            return NO_TOKENS;
+        String lower = DIACRITICS.matcher(Normalizer.normalize(businessName, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        lower = DOTTED_ACRONYM.matcher(lower).replaceAll(match -> match.group(1).replace(".", ""));
+        List<String> all = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_ALPHANUMERIC.split(lower)) {
+            if (token.isEmpty())
+                continue;
+            all.add(token);
+            if (!LEGAL_FORMS.contains(token))
+                tokens.add(token);
+        }
+        //a name made only of legal forms keeps them, otherwise it would match nothing
+        String[] sorted = (tokens.isEmpty() ? all : tokens).toArray(NO_TOKENS);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,135 @@
+package it.water.company.service;
+
+import it.water.company.api.CompanyOptions;
+import it.water.company.model.CompanyConstants;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import lombok.Setter;
+
+/**
+ * Company options read from application properties.
+ */
+@FrameworkComponent
+public class CompanyOptionsImpl implements CompanyOptions {
+
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
+
+    @Override
+    public int getQueryPlanCacheSize() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_QUERY_PLAN_CACHE_SIZE, CompanyConstants.DEFAULT_QUERY_PLAN_CACHE_SIZE);
+    }
+
+    @Override
+    public long getCountCacheTtlMillis() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_COUNT_CACHE_TTL_MILLIS, CompanyConstants.DEFAULT_COUNT_CACHE_TTL_MILLIS);
+    }
+
+    @Override
+    public String getReadPersistenceUnit() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_READ_PERSISTENCE_UNIT, CompanyConstants.DEFAULT_READ_PERSISTENCE_UNIT);
+    }
+
+    @Override
+    public long getReadYourWritesWindowMillis() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_READ_YOUR_WRITES_WINDOW_MILLIS, CompanyConstants.DEFAULT_READ_YOUR_WRITES_WINDOW_MILLIS);
+    }
+
+    @Override
+    public boolean isVatNumberPreCheckEnabled() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_VAT_NUMBER_PRECHECK_ENABLED, CompanyConstants.DEFAULT_VAT_NUMBER_PRECHECK_ENABLED);
+    }
+
+    @Override
+    public boolean isLimiterEnabled() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_LIMITER_ENABLED, CompanyConstants.DEFAULT_LIMITER_ENABLED);
+    }
+
+    @Override
+    public int getLimiterInitialLimit() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_LIMITER_INITIAL_LIMIT, CompanyConstants.DEFAULT_LIMITER_INITIAL_LIMIT);
+    }
+
+    @Override
+    public int getLimiterMinLimit() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_LIMITER_MIN_LIMIT, CompanyConstants.DEFAULT_LIMITER_MIN_LIMIT);
+    }
+
+    @Override
+    public int getLimiterMaxLimit() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_LIMITER_MAX_LIMIT, CompanyConstants.DEFAULT_LIMITER_MAX_LIMIT);
+    }
+
+    @Override
+    public int getLimiterLatencyTolerancePercent() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_LIMITER_LATENCY_TOLERANCE_PERCENT, CompanyConstants.DEFAULT_LIMITER_LATENCY_TOLERANCE_PERCENT);
+    }
+
+    @Override
+    public boolean isWarmUpEnabled() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_WARMUP_ENABLED, CompanyConstants.DEFAULT_WARMUP_ENABLED);
+    }
+
+    @Override
+    public String getWarmUpStateFile() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_WARMUP_STATE_FILE, CompanyConstants.DEFAULT_WARMUP_STATE_FILE);
+    }
+
+    @Override
+    public int getWarmUpHotIdsSize() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_WARMUP_HOT_IDS_SIZE, CompanyConstants.DEFAULT_WARMUP_HOT_IDS_SIZE);
+    }
+
+    @Override
+    public long getWarmUpTimeoutMillis() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_WARMUP_TIMEOUT_MILLIS, CompanyConstants.DEFAULT_WARMUP_TIMEOUT_MILLIS);
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_TRACE_ENABLED, CompanyConstants.DEFAULT_TRACE_ENABLED);
+    }
+
+    @Override
+    public long getTraceSlowThresholdMillis() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_TRACE_SLOW_THRESHOLD_MILLIS, CompanyConstants.DEFAULT_TRACE_SLOW_THRESHOLD_MILLIS);
+    }
+
+    @Override
+    public int getTraceSamplingInterval() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_TRACE_SAMPLING_INTERVAL, CompanyConstants.DEFAULT_TRACE_SAMPLING_INTERVAL);
+    }
+
+    @Override
+    public boolean isDuplicatesCheckEnabled() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_DUPLICATES_CHECK_ENABLED, CompanyConstants.DEFAULT_DUPLICATES_CHECK_ENABLED);
+    }
+
+    @Override
+    public int getDuplicatesThresholdPercent() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_DUPLICATES_THRESHOLD_PERCENT, CompanyConstants.DEFAULT_DUPLICATES_THRESHOLD_PERCENT);
+    }
+
+    @Override
+    public int getDuplicatesMaxBlockSize() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_DUPLICATES_MAX_BLOCK_SIZE, CompanyConstants.DEFAULT_DUPLICATES_MAX_BLOCK_SIZE);
+    }
+
+    @Override
+    public int getDuplicatesReportMaxSize() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_DUPLICATES_REPORT_MAX_SIZE, CompanyConstants.DEFAULT_DUPLICATES_REPORT_MAX_SIZE);
+    }
+
+    @Override
+    public int getBatchGetChunkSize() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_BATCH_GET_CHUNK_SIZE, CompanyConstants.DEFAULT_BATCH_GET_CHUNK_SIZE);
+    }
+
+    @Override
+    public int getBatchGetMaxIds() {
+        return applicationProperties.getPropertyOrDefault(CompanyConstants.PROP_BATCH_GET_MAX_IDS, CompanyConstants.DEFAULT_BATCH_GET_MAX_IDS);
+    }
+
+}
@@ -1,15 +1,36 @@
 package it.water.company.service;
 
 import it.water.company.api.CompanyApi;
+import it.water.company.api.CompanyOptions;
+import it.water.company.api.CompanyRepository;
 import it.water.company.api.CompanySystemApi;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateReport;
+import it.water.company.model.CompanyDuplicateScan;
+import it.water.company.repository.CompanyIdBatches;
+import it.water.company.repository.CompanyPaginationScope;
+import it.water.core.api.model.PaginableResult;
 import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.action.CrudActions;
+import it.water.core.permission.annotations.AllowGenericPermissions;
 import it.water.repository.service.BaseEntityServiceImpl;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @Generated by Water Generator
@@ -28,9 +49,128 @@ public class CompanyServiceImpl extends BaseEntityServiceImpl<Company> implement
     @Setter
     private ComponentRegistry componentRegistry;
 
+    @Inject
+    @Setter
+    private CompanyRepository repository;
+
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
     public CompanyServiceImpl() {
 
         super(Company.class);
     }
 
+    /**
+     * Runs the standard findAll, so the same permission filters apply, skipping the COUNT query when requested.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public PaginableResult<Company> findAll(Query filter, int delta, int page, QueryOrder queryOrder, boolean withCount) {
+        if (withCount)
+            return this.findAll(filter, delta, page, queryOrder);
+        return CompanyPaginationScope.withoutCount(() -> this.findAll(filter, delta, page, queryOrder));
+    }
+
+    /**
+     * Visible companies are loaded with one query per chunk of ids.
+     * Only ids left out are looked up again bypassing permissions, to tell missing companies from forbidden ones.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public CompanyBatchResult findAllByIds(List<Long> ids) {
+        List<Long> requestedIds = CompanyIdBatches.distinct(ids);
+        Map<Long, Company> visible = findVisible(requestedIds);
+        List<Long> notVisibleIds = requestedIds.stream().filter(id -> !visible.containsKey(id)).collect(Collectors.toList());
+        Set<Long> existingIds = notVisibleIds.isEmpty() ? Collections.emptySet()
+                : systemService.findAllByIds(notVisibleIds).stream().map(Company::getId).collect(Collectors.toSet());
+        List<Company> companies = new ArrayList<>(visible.size());
+        List<Long> missingIds = new ArrayList<>();
+        List<Long> forbiddenIds = new ArrayList<>();
+        for (Long id : requestedIds) {
+            if (visible.containsKey(id))
+                companies.add(visible.get(id));
+            else if (existingIds.contains(id))
+                forbiddenIds.add(id);
+            else
+                missingIds.add(id);
+        }
+        return new CompanyBatchResult(companies, missingIds, forbiddenIds);
+    }
+
+    /**
+     * The company must be visible to the current user, duplicates the user cannot see are left out.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND)
+    public List<CompanyDuplicate> findDuplicates(long id) {
+        this.find(id);
+        return visibleDuplicates(systemService.findDuplicates(id));
+    }
+
+    /**
+     * Whole table scan, granted only to users allowed to remove companies.
+     */
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.REMOVE)
+    public CompanyDuplicateScan startDuplicatesScan() {
+        return visibleScan(systemService.startDuplicatesScan());
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.REMOVE)
+    public CompanyDuplicateScan getDuplicatesScan() {
+        return visibleScan(systemService.getDuplicatesScan());
+    }
+
+    @Override
+    @AllowGenericPermissions(actions = CrudActions.FIND_ALL)
+    public List<CompanyDuplicate> getFlaggedDuplicates() {
+        return visibleDuplicates(systemService.getFlaggedDuplicates());
+    }
+
+    /**
+     * The scan covers the whole table, its report keeps the counters of the whole scan
+     * but lists only duplicates visible to the current user.
+     */
+    private CompanyDuplicateScan visibleScan(CompanyDuplicateScan scan) {
+        CompanyDuplicateReport report = scan.getReport();
+        if (report == null)
+            return scan;
+        CompanyDuplicateReport visibleReport = new CompanyDuplicateReport(report.getScannedCompanies(), report.getAreas(), report.getComparisons(),
+                report.getPurgedBlocks(), report.getDuplicatesFound(), report.getDurationMillis(), visibleDuplicates(report.getDuplicates()));
+        return new CompanyDuplicateScan(scan.isRunning(), scan.getStartedAt(), scan.getFailure(), visibleReport);
+    }
+
+    /**
+     * Visibility of both companies of each pair is checked with the same query used by findAllByIds.
+     *
+     * @return duplicates whose companies are both visible to the current user
+     */
+    private List<CompanyDuplicate> visibleDuplicates(List<CompanyDuplicate> duplicates) {
+        if (duplicates.isEmpty())
+            return duplicates;
+        Map<Long, Company> visible = findVisible(duplicates.stream()
+                .flatMap(duplicate -> Stream.of(duplicate.getCompanyId(), duplicate.getDuplicateId()))
+                .distinct().collect(Collectors.toList()));
+        return duplicates.stream()
+                .filter(duplicate -> visible.containsKey(duplicate.getCompanyId()) && visible.containsKey(duplicate.getDuplicateId()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Each chunk of ids runs through the standard findAll, so the same permission filters apply to the whole set with one query.
+     *
+     * @return companies visible to the current user, by id
+     */
+    private Map<Long, Company> findVisible(List<Long> ids) {
+        Map<Long, Company> visible = new HashMap<>();
+        for (List<Long> chunk : CompanyIdBatches.chunks(ids, companyOptions.getBatchGetChunkSize())) {
+            Query filter = repository.getQueryBuilderInstance().createQueryFilter(CompanyIdBatches.inFilter(chunk));
+            this.findAll(filter, -1, -1, null).getResults().forEach(company -> visible.put(company.getId(), company));
+        }
+        return visible;
+    }
+
 }
@@ -0,0 +1,81 @@
+package it.water.company.service;
+
+/**
+ * Measures how long the Company module takes to reach steady state after being activated.
+ * Latencies are averaged over consecutive windows of requests, steady state is reached by the first window
+ * whose average stays within the tolerance of the previous window average.
+ * Comparing the measure of runs with and without warm-up tells how much the warm-up shortens the slow start.
+ */
+public class CompanySteadyState {
+    private final long startNanos;
+    private final int windowSize;
+    private final double tolerance;
+
+    private long windowTotalNanos;
+    private int windowCount;
+    private long firstWindowAverageNanos = -1;
+    private long previousWindowAverageNanos = -1;
+    private long steadyWindowAverageNanos = -1;
+    private long reachedAfterMillis = -1;
+
+    /**
+     * @param startNanos       activation time, as returned by System.nanoTime()
+     * @param windowSize       number of requests averaged by each window
+     * @param tolerancePercent max difference, in percent, between the averages of two consecutive steady windows
+     */
+    public CompanySteadyState(long startNanos, int windowSize, int tolerancePercent) {
+        this.startNanos = startNanos;
+        this.windowSize = Math.max(1, windowSize);
+        this.tolerance = tolerancePercent / 100d;
+    }
+
+    /**
+     * @param nowNanos      completion time of the request, as returned by System.nanoTime()
+     * @param latencyNanos  latency of the request
+     * @return true only for the request which makes the module reach steady state
+     */
+    public synchronized boolean record(long nowNanos, long latencyNanos) {
+        if (isReached())
+            return false;
+        windowTotalNanos += latencyNanos;
+        if (++windowCount < windowSize)
+            return false;
+        long average = windowTotalNanos / windowCount;
+        windowTotalNanos = 0;
+        windowCount = 0;
+        if (firstWindowAverageNanos < 0)
+            firstWindowAverageNanos = average;
+        boolean steady = previousWindowAverageNanos >= 0 && Math.abs(average - previousWindowAverageNanos) <= previousWindowAverageNanos * tolerance;
+        previousWindowAverageNanos = average;
+        if (!steady)
+            return false;
+        steadyWindowAverageNanos = average;
+        reachedAfterMillis = (nowNanos - startNanos) / 1_000_000;
+        return true;
+    }
+
+    public synchronized boolean isReached() {
+        return reachedAfterMillis >= 0;
+    }
+
+    /**
+     * @return millis from activation to steady state, -1 while not reached
+     */
+    public synchronized long getReachedAfterMillis() {
+        return reachedAfterMillis;
+    }
+
+    public synchronized long getFirstWindowAverageNanos() {
+        return firstWindowAverageNanos;
+    }
+
+    public synchronized long getSteadyWindowAverageNanos() {
+        return steadyWindowAverageNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "reachedAfterMillis=" + reachedAfterMillis + ", firstWindowAverageMicros=" + firstWindowAverageNanos / 1000
+                + ", steadyWindowAverageMicros=" + steadyWindowAverageNanos / 1000;
+    }
+}
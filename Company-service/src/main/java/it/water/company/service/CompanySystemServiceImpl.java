@@ -1,15 +1,41 @@
 package it.water.company.service;
 
+import it.water.company.api.CompanyOptions;
 import it.water.company.api.CompanyRepository;
 import it.water.company.api.CompanySystemApi;
+import it.water.company.model.CompactCompanies;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateReport;
+import it.water.company.model.CompanyDuplicateScan;
+import it.water.company.trace.CompanyOperationTrace;
+import it.water.core.api.model.PaginableResult;
 import it.water.core.api.registry.filter.ComponentFilterBuilder;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.core.interceptors.annotations.OnActivate;
+import it.water.core.interceptors.annotations.OnDeactivate;
+import it.water.repository.entity.model.exceptions.DuplicateEntityException;
 import it.water.repository.service.BaseEntitySystemServiceImpl;
 import lombok.Getter;
 import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @Generated by Water Generator
@@ -17,6 +43,11 @@ import lombok.Setter;
  */
 @FrameworkComponent
 public class CompanySystemServiceImpl extends BaseEntitySystemServiceImpl<Company> implements CompanySystemApi {
+    private static final Logger log = LoggerFactory.getLogger(CompanySystemServiceImpl.class);
+    private static final int SCAN_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    //duplicate checks waiting for the check thread, further writes are not checked
+    private static final int MAX_PENDING_DUPLICATE_CHECKS = 10000;
+
     @Inject
     @Getter
     @Setter
@@ -26,8 +57,318 @@ public class CompanySystemServiceImpl extends BaseEntitySystemServiceImpl<Compan
     @Setter
     private ComponentFilterBuilder componentFilterBuilder;
 
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    private volatile CompanyVatNumberIndex vatNumberIndex;
+
+    private volatile CompanyDuplicateEngine duplicateEngine;
+
+    private final LongAdder skippedDuplicateChecks = new LongAdder();
+
+    //guarded by itself, flagged companies by id, least recently checked first
+    private final Map<Long, List<CompanyDuplicate>> flaggedDuplicates = new LinkedHashMap<>();
+
+    private volatile ExecutorService scanExecutor;
+
+    private volatile ExecutorService duplicateCheckExecutor;
+
+    private volatile ExecutorService vatNumberIndexExecutor;
+
+    private volatile CompanyDuplicateScan duplicatesScan = new CompanyDuplicateScan(false, 0, null, null);
+
     public CompanySystemServiceImpl() {
         super(Company.class);
     }
 
-}
\ No newline at end of file
+    /**
+     * Builds the VAT number index at startup, if it fails it will be built on the first write.
+     */
+    @OnActivate
+    public void onActivate() {
+        try {
+            CompanyVatNumberIndex index = getVatNumberIndex();
+            if (index != null)
+                index.build();
+        } catch (Exception e) {
+            log.warn("Company VAT number index not built at startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the duplicate scan pool, the duplicate check thread and the VAT number index rebuild thread,
+     * interrupting a running scan and dropping pending checks.
+     */
+    @OnDeactivate
+    public synchronized void onDeactivate() {
+        ExecutorService executor = scanExecutor;
+        scanExecutor = null;
+        if (executor != null)
+            executor.shutdownNow();
+        ExecutorService checkExecutor = duplicateCheckExecutor;
+        duplicateCheckExecutor = null;
+        if (checkExecutor != null)
+            checkExecutor.shutdownNow();
+        ExecutorService indexExecutor = vatNumberIndexExecutor;
+        vatNumberIndexExecutor = null;
+        if (indexExecutor != null)
+            indexExecutor.shutdownNow();
+    }
+
+    /**
+     * Rejects duplicated VAT numbers before reaching the persistence layer.
+     */
+    @Override
+    public Company save(Company entity) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_VALIDATION);
+        try {
+            checkVatNumber(entity, 0);
+            Company saved = super.save(entity);
+            CompanyVatNumberIndex index = getVatNumberIndex();
+            if (index != null)
+                index.add(saved.getVatNumber());
+            flagDuplicates(saved);
+            return saved;
+        } finally {
+            CompanyOperationTrace.exit(phase);
+        }
+    }
+
+    /**
+     * Updates rarely change the VAT number: the stored one is read on the primary unit, without loading the company,
+     * and only a changed VAT number goes through the pre-check.
+     */
+    @Override
+    public Company update(Company entity) {
+        CompanyVatNumberIndex vatIndex = getVatNumberIndex();
+        if (vatIndex != null && entity.getVatNumber() != null && !entity.getVatNumber().equals(repository.findVatNumber(entity.getId())))
+            checkVatNumber(entity, entity.getId());
+        Company updated = super.update(entity);
+        CompanyVatNumberIndex index = getVatNumberIndex();
+        if (index != null)
+            index.add(updated.getVatNumber());
+        flagDuplicates(updated);
+        return updated;
+    }
+
+    @Override
+    public void remove(long id) {
+        super.remove(id);
+        CompanyVatNumberIndex index = getVatNumberIndex();
+        if (index != null)
+            index.recordRemoval();
+        synchronized (flaggedDuplicates) {
+            flaggedDuplicates.remove(id);
+        }
+    }
+
+    @Override
+    public PaginableResult<Company> findAll(Query filter, int delta, int page, QueryOrder queryOrder, boolean withCount) {
+        return repository.findAll(delta, page, filter, queryOrder, withCount);
+    }
+
+    @Override
+    public CompactCompanies findAllCompact(Query filter) {
+        return repository.findAllCompact(filter);
+    }
+
+    @Override
+    public List<Company> findAllByIds(Collection<Long> ids) {
+        return repository.findAllByIds(ids);
+    }
+
+    @Override
+    public List<CompanyDuplicate> findDuplicates(long id) {
+        Company company = repository.find(id);
+        return getDuplicateEngine().findDuplicates(company.getId(), company.getBusinessName(),
+                repository.findAllCompactByArea(company.getNation(), company.getPostalCode(), -1));
+    }
+
+    /**
+     * The scan runs on a pool kept for the life of the module, the first thread streams the table while the others score areas.
+     */
+    @Override
+    public synchronized CompanyDuplicateScan startDuplicatesScan() {
+        CompanyDuplicateScan current = duplicatesScan;
+        if (current.isRunning())
+            return current;
+        CompanyDuplicateScan started = new CompanyDuplicateScan(true, System.currentTimeMillis(), null, current.getReport());
+        duplicatesScan = started;
+        getScanExecutor().execute(() -> runDuplicatesScan(started));
+        return started;
+    }
+
+    @Override
+    public CompanyDuplicateScan getDuplicatesScan() {
+        return duplicatesScan;
+    }
+
+    private void runDuplicatesScan(CompanyDuplicateScan started) {
+        try {
+            CompanyDuplicateReport report = getDuplicateEngine().scan(repository::forEachCompanyArea, companyOptions.getDuplicatesReportMaxSize(),
+                    getScanExecutor(), SCAN_PARALLELISM);
+            log.info("Company duplicate scan: {} companies in {} areas, {} comparisons, {} duplicates in {} ms",
+                    report.getScannedCompanies(), report.getAreas(), report.getComparisons(), report.getDuplicatesFound(), report.getDurationMillis());
+            duplicatesScan = new CompanyDuplicateScan(false, started.getStartedAt(), null, report);
+        } catch (RuntimeException e) {
+            log.warn("Company duplicate scan failed: {}", e.getMessage());
+            duplicatesScan = new CompanyDuplicateScan(false, started.getStartedAt(), e.getMessage(), started.getReport());
+        }
+    }
+
+    /**
+     * Most recently checked first, each company is listed with all its likely duplicates.
+     */
+    @Override
+    public List<CompanyDuplicate> getFlaggedDuplicates() {
+        List<CompanyDuplicate> flagged = new ArrayList<>();
+        synchronized (flaggedDuplicates) {
+            flaggedDuplicates.values().forEach(flagged::addAll);
+        }
+        List<CompanyDuplicate> mostRecentFirst = new ArrayList<>(flagged.size());
+        for (int i = flagged.size() - 1; i >= 0; i--)
+            mostRecentFirst.add(flagged.get(i));
+        return mostRecentFirst;
+    }
+
+    /**
+     * Queues the duplicate check of a saved company, so the write transaction neither loads its area nor scores it.
+     * The check never makes the write fail, when too many checks are pending the company is not checked.
+     */
+    private void flagDuplicates(Company company) {
+        if (!companyOptions.isDuplicatesCheckEnabled())
+            return;
+        long id = company.getId();
+        String businessName = company.getBusinessName();
+        String nation = company.getNation();
+        String postalCode = company.getPostalCode();
+        getDuplicateCheckExecutor().execute(() -> checkDuplicates(id, businessName, nation, postalCode));
+    }
+
+    /**
+     * Incremental duplicate check of a saved company against its area, the outcome replaces the previous one of the company.
+     * Areas larger than the max block size are not checked, so a check loads and scores a bounded number of companies:
+     * they are left to the duplicate scan.
+     */
+    private void checkDuplicates(long id, String businessName, String nation, String postalCode) {
+        try {
+            int maxAreaSize = companyOptions.getDuplicatesMaxBlockSize();
+            CompactCompanies area = repository.findAllCompactByArea(nation, postalCode, maxAreaSize + 1);
+            if (area.size() > maxAreaSize) {
+                skippedDuplicateChecks.increment();
+                log.debug("Company {} not checked for duplicates: its area has more than {} companies", id, maxAreaSize);
+                return;
+            }
+            List<CompanyDuplicate> duplicates = getDuplicateEngine().findDuplicates(id, businessName, area);
+            synchronized (flaggedDuplicates) {
+                flaggedDuplicates.remove(id);
+                if (!duplicates.isEmpty())
+                    flaggedDuplicates.put(id, duplicates);
+                Iterator<Long> leastRecentlyChecked = flaggedDuplicates.keySet().iterator();
+                while (flaggedDuplicates.size() > companyOptions.getDuplicatesReportMaxSize()) {
+                    leastRecentlyChecked.next();
+                    leastRecentlyChecked.remove();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Company {} not checked for duplicates: {}", id, e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of saved or updated companies not checked for duplicates, because their area is too large
+     * or too many checks were pending
+     */
+    public long getSkippedDuplicateChecks() {
+        return skippedDuplicateChecks.sum();
+    }
+
+    private ExecutorService getScanExecutor() {
+        ExecutorService executor = scanExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = scanExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(SCAN_PARALLELISM + 1, runnable -> {
+                        Thread thread = new Thread(runnable, "company-duplicates-scan");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    scanExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService getDuplicateCheckExecutor() {
+        ExecutorService executor = duplicateCheckExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = duplicateCheckExecutor;
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_PENDING_DUPLICATE_CHECKS), runnable -> {
+                        Thread thread = new Thread(runnable, "company-duplicates-check");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, (runnable, pool) -> skippedDuplicateChecks.increment());
+                    duplicateCheckExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService getVatNumberIndexExecutor() {
+        ExecutorService executor = vatNumberIndexExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = vatNumberIndexExecutor;
+                if (executor == null) {
+                    executor = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "company-vat-number-index");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    vatNumberIndexExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private CompanyDuplicateEngine getDuplicateEngine() {
+        CompanyDuplicateEngine engine = duplicateEngine;
+        if (engine == null) {
+            synchronized (this) {
+                engine = duplicateEngine;
+                if (engine == null) {
+                    engine = new CompanyDuplicateEngine(companyOptions.getDuplicatesThresholdPercent() / 100d, companyOptions.getDuplicatesMaxBlockSize());
+                    duplicateEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    private void checkVatNumber(Company entity, long excludedId) {
+        CompanyVatNumberIndex index = getVatNumberIndex();
+        if (index != null && entity.getVatNumber() != null && index.isDuplicate(entity.getVatNumber(), excludedId))
+            throw new DuplicateEntityException("Company with vatNumber " + entity.getVatNumber() + " already exists");
+    }
+
+    /**
+     * @return VAT number index or null if the pre-check is disabled
+     */
+    public CompanyVatNumberIndex getVatNumberIndex() {
+        if (vatNumberIndex == null && companyOptions.isVatNumberPreCheckEnabled()) {
+            synchronized (this) {
+                if (vatNumberIndex == null)
+                    vatNumberIndex = new CompanyVatNumberIndex(repository, runnable -> getVatNumberIndexExecutor().execute(runnable));
+            }
+        }
+        return vatNumberIndex;
+    }
+
+}
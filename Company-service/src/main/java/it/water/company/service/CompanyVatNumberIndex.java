@@ -0,0 +1,169 @@
+package it.water.company.service;
+
+import it.water.company.api.CompanyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory membership index of existing VAT numbers.
+ * A Bloom filter answers most lookups for new VAT numbers without touching the database,
+ * possible matches are confirmed with a single query on the primary persistence unit.
+ * A stale filter is rebuilt in the background while it keeps serving lookups: it still holds every VAT number,
+ * it only gives more false positives.
+ */
+public class CompanyVatNumberIndex {
+    private static final Logger log = LoggerFactory.getLogger(CompanyVatNumberIndex.class);
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final long MIN_CAPACITY = 1024;
+
+    private final CompanyRepository repository;
+    private final Executor rebuildExecutor;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    //guards the swap of the filter and the VAT numbers added while a build is loading, which the new filter would miss
+    private final Object swapLock = new Object();
+    private volatile VatNumberBloomFilter filter;
+    private List<String> addedDuringBuild;
+    private final LongAdder filteredOut = new LongAdder();
+    private final LongAdder confirmations = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * @param repository      repository the VAT numbers are loaded from
+     * @param rebuildExecutor runs the rebuilds of a stale filter
+     */
+    public CompanyVatNumberIndex(CompanyRepository repository, Executor rebuildExecutor) {
+        this.repository = repository;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    /**
+     * Loads every stored VAT number, read on the primary persistence unit, into a new filter sized with room to grow.
+     * VAT numbers added through this index while the build is loading are added to the new filter before it replaces the old one.
+     * A VAT number committed by another instance may be missed: the unique constraint
+     * on the database still rejects it, so the index can only lose speed, never correctness.
+     */
+    public synchronized void build() {
+        long start = System.currentTimeMillis();
+        synchronized (swapLock) {
+            addedDuringBuild = new ArrayList<>();
+        }
+        VatNumberBloomFilter newFilter;
+        try {
+            long count = repository.countVatNumbers();
+            newFilter = new VatNumberBloomFilter(Math.max(MIN_CAPACITY, count * 2), FALSE_POSITIVE_PROBABILITY);
+            repository.forEachVatNumber(newFilter::add);
+        } catch (RuntimeException e) {
+            synchronized (swapLock) {
+                addedDuringBuild = null;
+            }
+            throw e;
+        }
+        synchronized (swapLock) {
+            addedDuringBuild.forEach(newFilter::add);
+            addedDuringBuild = null;
+            filter = newFilter;
+        }
+        rebuilds.incrementAndGet();
+        log.debug("Company VAT number index built with {} entries in {} ms", newFilter.getInsertions(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @param vatNumber  VAT number to check
+     * @param excludedId id of the company being updated, 0 on save
+     * @return true if another company already uses the VAT number
+     */
+    public boolean isDuplicate(String vatNumber, long excludedId) {
+        VatNumberBloomFilter current = getFilter();
+        if (!current.mightContain(vatNumber)) {
+            filteredOut.increment();
+            return false;
+        }
+        confirmations.increment();
+        boolean duplicate = repository.existsByVatNumber(vatNumber, excludedId);
+        if (duplicate)
+            duplicates.increment();
+        return duplicate;
+    }
+
+    public void add(String vatNumber) {
+        getFilter();
+        synchronized (swapLock) {
+            filter.add(vatNumber);
+            if (addedDuringBuild != null)
+                addedDuringBuild.add(vatNumber);
+        }
+    }
+
+    public void recordRemoval() {
+        getFilter().recordRemoval();
+    }
+
+    /**
+     * Builds the first filter in the calling thread, later a stale filter is returned while a single background rebuild replaces it.
+     */
+    private VatNumberBloomFilter getFilter() {
+        VatNumberBloomFilter current = filter;
+        if (current == null) {
+            synchronized (this) {
+                if (filter == null)
+                    build();
+                current = filter;
+            }
+        } else if (current.needsRebuild() && rebuilding.compareAndSet(false, true)) {
+            try {
+                rebuildExecutor.execute(this::rebuild);
+            } catch (RuntimeException e) {
+                rebuilding.set(false);
+                log.warn("Company VAT number index rebuild not started: {}", e.getMessage());
+            }
+        }
+        return current;
+    }
+
+    private void rebuild() {
+        try {
+            build();
+        } catch (RuntimeException e) {
+            log.warn("Company VAT number index rebuild failed, the stale filter keeps serving: {}", e.getMessage());
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * @return lookups answered by the filter alone
+     */
+    public long getFilteredOut() {
+        return filteredOut.sum();
+    }
+
+    /**
+     * @return lookups which needed a confirmation query
+     */
+    public long getConfirmations() {
+        return confirmations.sum();
+    }
+
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return true while a background rebuild is scheduled or running
+     */
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    public long getRebuilds() {
+        return rebuilds.get();
+    }
+}
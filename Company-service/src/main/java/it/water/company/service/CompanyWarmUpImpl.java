@@ -0,0 +1,324 @@
+package it.water.company.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import it.water.company.api.CompanyOptions;
+import it.water.company.api.CompanyRepository;
+import it.water.company.api.CompanyWarmUp;
+import it.water.company.model.Company;
+import it.water.company.model.CompanyConstants;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.rest.WaterJsonView;
+import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.interceptors.annotations.OnActivate;
+import it.water.core.interceptors.annotations.OnDeactivate;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Warm-up run when the Company module is activated, before it starts serving requests.
+ * Hot ids and filters are stored in a plain text state file:
+ * one "id" line per company, most requested first, and one "filter" line per findAll filter shape.
+ * Nothing loaded by the warm-up is kept in memory: it runs the code paths and the queries of real requests,
+ * so the JIT, the query plan cache and the database buffers are warm when traffic arrives.
+ */
+@FrameworkComponent
+public class CompanyWarmUpImpl implements CompanyWarmUp {
+    private static final Logger log = LoggerFactory.getLogger(CompanyWarmUpImpl.class);
+
+    private static final String ID_PREFIX = "id ";
+    private static final String FILTER_PREFIX = "filter ";
+    private static final int MAX_FILTERS = 50;
+    private static final int MIN_TRACKED_IDS = 1000;
+    //enough invocations for the JIT to compile the serialization paths
+    private static final int SERIALIZATION_ROUNDS = 10000;
+    private static final int STEADY_STATE_WINDOW_SIZE = 50;
+    private static final int STEADY_STATE_TOLERANCE_PERCENT = 10;
+
+    @Inject
+    @Setter
+    private CompanyRepository companyRepository;
+
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    private volatile CompanyHotIds hotIds;
+
+    private volatile Statistics lastRun;
+
+    private volatile CompanySteadyState steadyState;
+
+    /**
+     * Time to steady state is measured from here, so it includes the warm-up itself.
+     */
+    @OnActivate
+    public void onActivate() {
+        steadyState = new CompanySteadyState(System.nanoTime(), STEADY_STATE_WINDOW_SIZE, STEADY_STATE_TOLERANCE_PERCENT);
+        if (!companyOptions.isWarmUpEnabled())
+            return;
+        if (getStateFile() == null)
+            log.warn("Company warm-up enabled without {}: hot companies and findAll filters are not kept across restarts", CompanyConstants.PROP_WARMUP_STATE_FILE);
+        warmUp();
+    }
+
+    @OnDeactivate
+    public void onDeactivate() {
+        saveState();
+    }
+
+    @Override
+    public void recordFind(long id, long latencyNanos) {
+        getHotIds().record(id);
+        CompanySteadyState current = steadyState;
+        if (current != null && current.record(System.nanoTime(), latencyNanos))
+            log.info("Company find reached steady state: {}", current);
+    }
+
+    /**
+     * Each step stops as soon as the time budget is exceeded, failures are logged and never prevent the module from starting.
+     */
+    @Override
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        long deadline = start + companyOptions.getWarmUpTimeoutMillis();
+        int preloaded = 0;
+        int missing = 0;
+        int compiledFilters = 0;
+        int serialized = 0;
+        try {
+            Set<String> filters = loadState();
+            List<Company> companies = new ArrayList<>();
+            List<Long> ids = getHotIds().top(companyOptions.getWarmUpHotIdsSize());
+            int chunkSize = Math.max(1, companyOptions.getBatchGetChunkSize());
+            for (int from = 0; from < ids.size() && System.currentTimeMillis() <= deadline; from += chunkSize) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + chunkSize));
+                List<Company> found = reload(chunk);
+                companies.addAll(found);
+                //companies removed since the state was saved
+                missing += chunk.size() - found.size();
+            }
+            preloaded = companies.size();
+            for (String filter : filters) {
+                if (System.currentTimeMillis() > deadline)
+                    break;
+                if (precompile(filter))
+                    compiledFilters++;
+            }
+            serialized = exerciseSerialization(companies, deadline);
+        } catch (Exception e) {
+            log.warn("Company warm-up interrupted: {}", e.getMessage());
+        }
+        lastRun = new Statistics(System.currentTimeMillis() - start, preloaded, missing, compiledFilters, serialized);
+        log.info("Company warm-up completed: {}", lastRun);
+    }
+
+    @Override
+    public void saveState() {
+        Path stateFile = getStateFile();
+        if (stateFile == null)
+            return;
+        List<String> lines = new ArrayList<>();
+        getHotIds().top(companyOptions.getWarmUpHotIdsSize()).forEach(id -> lines.add(ID_PREFIX + id));
+        try {
+            companyRepository.getRecentFilterShapes(MAX_FILTERS).forEach(filter -> lines.add(FILTER_PREFIX + filter));
+        } catch (Exception e) {
+            log.debug("Company findAll filters not stored: {}", e.getMessage());
+        }
+        try {
+            Path parent = stateFile.toAbsolutePath().getParent();
+            if (parent != null)
+                Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "company-warmup", ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Company warm-up state not saved to {}: {}", stateFile, e.getMessage());
+        }
+    }
+
+    /**
+     * @return statistics of the last warm-up, null if it never ran
+     */
+    public Statistics getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * @return time to steady state since the last activation, null if the module has not been activated
+     */
+    public CompanySteadyState getSteadyState() {
+        return steadyState;
+    }
+
+    /**
+     * Restores the stored ranking, weighting ids by position so the stored order is kept.
+     *
+     * @return stored filters, the unfiltered findAll first
+     */
+    private Set<String> loadState() throws IOException {
+        Set<String> filters = new LinkedHashSet<>();
+        filters.add("");
+        Path stateFile = getStateFile();
+        if (stateFile == null || !Files.isReadable(stateFile))
+            return filters;
+        List<String> lines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+        long weight = lines.size();
+        for (String line : lines) {
+            if (line.startsWith(ID_PREFIX)) {
+                try {
+                    getHotIds().seed(Long.parseLong(line.substring(ID_PREFIX.length()).trim()), weight--);
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping invalid warm-up line {}", line);
+                }
+            } else if (line.startsWith(FILTER_PREFIX)) {
+                filters.add(line.substring(FILTER_PREFIX.length()).trim());
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Reads hot companies with the chunked IN query of batch-get, the entities are not cached.
+     */
+    private List<Company> reload(List<Long> ids) {
+        try {
+            return companyRepository.findAllByIds(ids);
+        } catch (Exception e) {
+            log.debug("Company hot ids not reloaded: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private boolean precompile(String filter) {
+        try {
+            return companyRepository.precompileFilterShape(filter);
+        } catch (Exception e) {
+            log.debug("Company findAll filter {} not compiled: {}", filter, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Serializes and parses companies with the ObjectMapper registered in the runtime, in the public json view
+     * of the rest endpoints. A private mapper would warm up code paths requests never go through,
+     * so the step is skipped when the runtime does not register one.
+     *
+     * @return number of serialized companies
+     */
+    private int exerciseSerialization(List<Company> companies, long deadline) {
+        ObjectMapper mapper = findObjectMapper();
+        if (mapper == null) {
+            log.info("Company serialization warm-up skipped: no ObjectMapper registered");
+            return 0;
+        }
+        List<Company> samples = companies;
+        if (samples.isEmpty())
+            samples = List.of(new Company("warmUp", "warmUp", "warmUp", "warmUp", "warmUp", "warmUp", 0L));
+        ObjectWriter writer = mapper.writerWithView(WaterJsonView.Public.class);
+        ObjectReader reader = mapper.readerWithView(WaterJsonView.Public.class).forType(Company.class);
+        int serialized = 0;
+        try {
+            while (serialized < SERIALIZATION_ROUNDS && System.currentTimeMillis() <= deadline) {
+                for (Company company : samples) {
+                    reader.readValue(writer.writeValueAsBytes(company));
+                    serialized++;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Company serialization warm-up stopped: {}", e.getMessage());
+        }
+        return serialized;
+    }
+
+    private ObjectMapper findObjectMapper() {
+        try {
+            return componentRegistry.findComponent(ObjectMapper.class, null);
+        } catch (Exception e) {
+            log.debug("No ObjectMapper registered: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path getStateFile() {
+        String stateFile = companyOptions.getWarmUpStateFile();
+        return (stateFile == null || stateFile.isBlank()) ? null : Paths.get(stateFile);
+    }
+
+    private CompanyHotIds getHotIds() {
+        CompanyHotIds ids = hotIds;
+        if (ids == null) {
+            synchronized (this) {
+                ids = hotIds;
+                if (ids == null) {
+                    ids = new CompanyHotIds(Math.max(MIN_TRACKED_IDS, companyOptions.getWarmUpHotIdsSize() * 10));
+                    hotIds = ids;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Outcome of a warm-up run.
+     */
+    public static final class Statistics {
+        private final long durationMillis;
+        private final int preloaded;
+        private final int missing;
+        private final int compiledFilters;
+        private final int serialized;
+
+        private Statistics(long durationMillis, int preloaded, int missing, int compiledFilters, int serialized) {
+            this.durationMillis = durationMillis;
+            this.preloaded = preloaded;
+            this.missing = missing;
+            this.compiledFilters = compiledFilters;
+            this.serialized = serialized;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getPreloaded() {
+            return preloaded;
+        }
+
+        public int getMissing() {
+            return missing;
+        }
+
+        public int getCompiledFilters() {
+            return compiledFilters;
+        }
+
+        public int getSerialized() {
+            return serialized;
+        }
+
+        @Override
+        public String toString() {
+            return "durationMillis=" + durationMillis + ", preloaded=" + preloaded + ", missing=" + missing
+                    + ", compiledFilters=" + compiledFilters + ", serialized=" + serialized;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package it.water.company.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free Bloom filter over company VAT numbers.
+ * A negative answer is definitive, a positive one must be confirmed against the database.
+ * Deleted VAT numbers cannot be removed: removals are only counted so the owner can decide when to rebuild.
+ */
+public class VatNumberBloomFilter {
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+    private final int numBits;
+    private final int numHashes;
+    private final long expectedInsertions;
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+
+    /**
+     * @param expectedInsertions      number of VAT numbers the filter is sized for
+     * @param falsePositiveProbability target false positive probability at expected insertions
+     */
+    public VatNumberBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        long optimalBits = (long) Math.ceil(-this.expectedInsertions * Math.log(falsePositiveProbability) / (LN2 * LN2));
+        this.numBits = (int) Math.max(Long.SIZE, Math.min(Integer.MAX_VALUE - Long.SIZE, optimalBits));
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / this.expectedInsertions * LN2));
+        this.bits = new AtomicLongArray((numBits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    public void add(String vatNumber) {
+        long hash = hash(vatNumber);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            int index = bit >>> 6;
+            long mask = 1L << bit;
+            long current = bits.get(index);
+            while ((current & mask) == 0 && !bits.compareAndSet(index, current, current | mask)) {
+                current = bits.get(index);
+            }
+        }
+        insertions.increment();
+    }
+
+    /**
+     * @return false if the VAT number has certainly never been added, true if it might have been
+     */
+    public boolean mightContain(String vatNumber) {
+        long hash = hash(vatNumber);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void recordRemoval() {
+        removals.increment();
+    }
+
+    /**
+     * @return true when the filter holds more entries than it was sized for, or too many removed entries,
+     * so the false positive rate is no longer the expected one
+     */
+    public boolean needsRebuild() {
+        long inserted = insertions.sum();
+        return inserted > expectedInsertions || removals.sum() * 4 > Math.max(inserted, 1000);
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * 64 bit FNV-1a over the UTF-8 bytes, followed by a murmur finalizer to spread bits.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,171 @@
+package it.water.company.service.rest;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive concurrency limiter acting as a bulkhead for a group of Company endpoints.
+ * The limit is driven by the latency gradient: a short-term average of the latency compared with a long-term one.
+ * It grows by about one every limit requests completed while the short-term average stays within tolerance of the long-term one,
+ * and shrinks in proportion to the gradient when latency rises faster than that.
+ * Comparing averages, instead of using the fastest request as baseline, lets endpoints of the same bulkhead
+ * mix fast and slow requests without being taken for an overload.
+ * The long-term average is updated once per window of requests: it follows falling latency quickly,
+ * but rises, by at most 5% per window, only over windows in which the limit did not shrink.
+ * An ongoing overload keeps shrinking the limit, so it cannot drag the baseline up and the limit with it;
+ * a database lastingly slower pins the limit at its minimum, where it cannot shrink anymore, and the baseline follows it.
+ * Failed requests are measured like the others: business errors are not a sign of overload, timeouts show up as latency.
+ * Requests over the limit are rejected immediately with CompanyOverloadException instead of queueing.
+ */
+public class CompanyConcurrencyLimiter {
+    private static final double MIN_BACKOFF_RATIO = 0.5;
+    private static final double MAX_BACKOFF_RATIO = 0.9;
+    private static final double SHORT_TERM_SMOOTHING = 0.1;
+    private static final int LONG_TERM_WINDOW = 500;
+    private static final double LONG_TERM_DRIFT = 1.05;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final LongSupplier clock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ThreadLocal<int[]> holdCount = ThreadLocal.withInitial(() -> new int[1]);
+
+    private volatile double limit;
+    private long completed;
+    private double shortTermLatencyNanos;
+    private double longTermLatencyNanos;
+    private double windowLatencyNanos;
+    private int windowSamples;
+    private boolean shrunkInWindow;
+    private long lastDecreaseNanos;
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    /**
+     * @param name             bulkhead name used in messages
+     * @param initialLimit     concurrency limit at startup
+     * @param minLimit         limit never goes below this value
+     * @param maxLimit         limit never goes above this value
+     * @param latencyTolerance ratio of the short-term over the long-term average latency considered a sign of overload
+     */
+    public CompanyConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        this(name, initialLimit, minLimit, maxLimit, latencyTolerance, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of nano time used to measure latencies and pace decreases, System::nanoTime by default
+     */
+    public CompanyConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double latencyTolerance, LongSupplier clock) {
+        this.name = name;
+        this.clock = clock;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Runs the operation if the bulkhead has room, re-entrant calls on the same thread do not take a second slot.
+     *
+     * @throws CompanyOverloadException if the limit is reached
+     */
+    public <T> T execute(Supplier<T> operation) {
+        int[] held = holdCount.get();
+        if (held[0] > 0)
+            return operation.get();
+        if (!tryAcquire())
+            throw new CompanyOverloadException(name, getRetryAfterSeconds());
+        held[0]++;
+        long start = clock.getAsLong();
+        try {
+            return operation.get();
+        } finally {
+            held[0]--;
+            release(clock.getAsLong() - start);
+        }
+    }
+
+    /**
+     * Takes a slot of the bulkhead, each successful call must be followed by release.
+     *
+     * @return false if the limit is reached, the request is counted as rejected
+     */
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > (int) limit) {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Frees a slot taken by tryAcquire, updating the limit with the latency of the completed request.
+     */
+    public void release(long latencyNanos) {
+        onComplete(latencyNanos);
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void onComplete(long latencyNanos) {
+        completed++;
+        shortTermLatencyNanos += Math.max(SHORT_TERM_SMOOTHING, 1d / completed) * (latencyNanos - shortTermLatencyNanos);
+        windowLatencyNanos += latencyNanos;
+        if (++windowSamples >= LONG_TERM_WINDOW) {
+            double windowAverage = windowLatencyNanos / windowSamples;
+            if (longTermLatencyNanos == 0)
+                longTermLatencyNanos = windowAverage;
+            else if (windowAverage < longTermLatencyNanos)
+                longTermLatencyNanos = (longTermLatencyNanos + windowAverage) / 2;
+            else if (!shrunkInWindow)
+                longTermLatencyNanos = Math.min(windowAverage, longTermLatencyNanos * LONG_TERM_DRIFT);
+            windowLatencyNanos = 0;
+            windowSamples = 0;
+            shrunkInWindow = false;
+        }
+        //until the first window is complete the long-term average is the average of the requests seen so far
+        double longTerm = (longTermLatencyNanos == 0) ? windowLatencyNanos / windowSamples : longTermLatencyNanos;
+        double gradient = latencyTolerance * longTerm / shortTermLatencyNanos;
+        double current = limit;
+        long now = clock.getAsLong();
+        if (gradient < 1) {
+            //decreasing at most once per latency interval, requests completing together share the same congestion signal
+            if (now - lastDecreaseNanos >= shortTermLatencyNanos) {
+                current = current * Math.max(MIN_BACKOFF_RATIO, Math.min(MAX_BACKOFF_RATIO, gradient));
+                lastDecreaseNanos = now;
+            }
+        } else if (inFlight.get() * 2 >= current) {
+            //growing only when the limit is actually used, otherwise idle periods would inflate it
+            current = current + 1 / current;
+        }
+        current = Math.min(maxLimit, Math.max(minLimit, current));
+        if (current < limit)
+            shrunkInWindow = true;
+        limit = current;
+    }
+
+    /**
+     * @return seconds a rejected client should wait, based on the current short-term latency
+     */
+    public synchronized long getRetryAfterSeconds() {
+        return Math.max(1, (long) Math.ceil(shortTermLatencyNanos / 1_000_000_000d));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getRejected() {
+        return rejected.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,18 @@
+package it.water.company.service.rest;
+
+/**
+ * Raised when a Company bulkhead is over its concurrency limit.
+ * REST controllers translate it into 503 Service Unavailable with a Retry-After header.
+ */
+public class CompanyOverloadException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public CompanyOverloadException(String bulkhead, long retryAfterSeconds) {
+        super("Company " + bulkhead + " bulkhead over its concurrency limit");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -2,8 +2,18 @@
 package it.water.company.service.rest;
 
 import it.water.company.api.CompanyApi;
+import it.water.company.api.CompanyOptions;
+import it.water.company.api.CompanyWarmUp;
 import it.water.company.api.rest.CompanyRestApi;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateScan;
+import it.water.company.repository.CompanyPaginationScope;
+import it.water.company.trace.CompanyOperationTrace;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.repository.query.QueryOrder;
 import it.water.core.api.service.BaseEntityApi;
 import it.water.core.api.service.rest.FrameworkRestController;
 import it.water.core.interceptors.annotations.Inject;
@@ -12,6 +22,11 @@ import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.function.Supplier;
+
 
 /**
  * @Generated by Water Generator
@@ -26,9 +41,188 @@ public class CompanyRestControllerImpl extends BaseEntityRestApi<Company> implem
     @Setter
     private CompanyApi companyApi;
 
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    @Inject
+    @Setter
+    private CompanyWarmUp companyWarmUp;
+
+    private volatile CompanyConcurrencyLimiter readLimiter;
+    private volatile CompanyConcurrencyLimiter writeLimiter;
+    private volatile CompanySlowOperationLog slowOperationLog;
+
     @Override
     protected BaseEntityApi<Company> getEntityService() {
         return companyApi;
     }
 
+    @Override
+    public Company save(Company entity) {
+        return traced("save", () -> limited(getWriteLimiter(), () -> inServiceLayer(() -> super.save(entity))));
+    }
+
+    @Override
+    public Company update(Company entity) {
+        return limited(getWriteLimiter(), () -> super.update(entity));
+    }
+
+    @Override
+    public void remove(long id) {
+        limited(getWriteLimiter(), () -> {
+            super.remove(id);
+            return null;
+        });
+    }
+
+    @Override
+    public Company find(long id) {
+        long start = System.nanoTime();
+        Company company = limited(getReadLimiter(), () -> super.find(id));
+        //only successful lookups make a company hot
+        if (companyWarmUp != null)
+            companyWarmUp.recordFind(id, System.nanoTime() - start);
+        return company;
+    }
+
+    @Override
+    public PaginableResult<Company> findAll(Integer delta, Integer page, Query filter, QueryOrder order) {
+        return traced("findAll", () -> limited(getReadLimiter(), () -> inServiceLayer(() -> super.findAll(delta, page, filter, order))));
+    }
+
+    @Override
+    public PaginableResult<Company> findAll() {
+        return traced("findAll", () -> limited(getReadLimiter(), () -> inServiceLayer(super::findAll)));
+    }
+
+    /**
+     * Same pagination parameters of findAll, with an opt-in mode which skips counting total results.
+     */
+    @Override
+    public PaginableResult<Company> findAll(boolean withCount) {
+        if (withCount)
+            return findAll();
+        return CompanyPaginationScope.withoutCount(this::findAll);
+    }
+
+    /**
+     * Requests with more ids than the configured max are rejected before taking a slot of the read limiter.
+     */
+    @Override
+    public CompanyBatchResult findAllByIds(List<Long> ids) {
+        if (companyOptions != null && ids != null && ids.size() > companyOptions.getBatchGetMaxIds())
+            throw tooManyIds("Company batch-get accepts at most " + companyOptions.getBatchGetMaxIds() + " ids, " + ids.size() + " requested");
+        return traced("batchGet", () -> limited(getReadLimiter(), () -> inServiceLayer(() -> companyApi.findAllByIds(ids))));
+    }
+
+    @Override
+    public List<CompanyDuplicate> findDuplicates(long id) {
+        return limited(getReadLimiter(), () -> companyApi.findDuplicates(id));
+    }
+
+    /**
+     * Not limited: the scan runs in background, these calls only start it or read its state.
+     */
+    @Override
+    public CompanyDuplicateScan startDuplicatesScan() {
+        return companyApi.startDuplicatesScan();
+    }
+
+    @Override
+    public CompanyDuplicateScan getDuplicatesScan() {
+        return companyApi.getDuplicatesScan();
+    }
+
+    @Override
+    public List<CompanyDuplicate> getFlaggedDuplicates() {
+        return limited(getReadLimiter(), () -> companyApi.getFlaggedDuplicates());
+    }
+
+    /**
+     * @return limiter shared by read endpoints, null if the limiter is disabled
+     */
+    public CompanyConcurrencyLimiter getReadLimiter() {
+        if (readLimiter == null && companyOptions != null && companyOptions.isLimiterEnabled()) {
+            synchronized (this) {
+                if (readLimiter == null)
+                    readLimiter = createLimiter("company-read");
+            }
+        }
+        return readLimiter;
+    }
+
+    /**
+     * @return limiter shared by write endpoints, null if the limiter is disabled.
+     * Writes have their own bulkhead so a burst of reads cannot starve them and vice versa.
+     */
+    public CompanyConcurrencyLimiter getWriteLimiter() {
+        if (writeLimiter == null && companyOptions != null && companyOptions.isLimiterEnabled()) {
+            synchronized (this) {
+                if (writeLimiter == null)
+                    writeLimiter = createLimiter("company-write");
+            }
+        }
+        return writeLimiter;
+    }
+
+    /**
+     * @return slow operation log of save, findAll and batch-get, null if tracing is disabled
+     */
+    public CompanySlowOperationLog getSlowOperationLog() {
+        if (slowOperationLog == null && companyOptions != null && companyOptions.isTraceEnabled()) {
+            synchronized (this) {
+                if (slowOperationLog == null)
+                    slowOperationLog = new CompanySlowOperationLog(companyOptions.getTraceSlowThresholdMillis(), companyOptions.getTraceSamplingInterval());
+            }
+        }
+        return slowOperationLog;
+    }
+
+    /**
+     * Maps a rejection to the exception of the rest technology in use.
+     * Default is 503 Service Unavailable with a Retry-After header.
+     */
+    protected RuntimeException overloaded(CompanyOverloadException e) {
+        return new WebApplicationException(e.getMessage(), Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", e.getRetryAfterSeconds()).build());
+    }
+
+    /**
+     * Maps a multi-get asking for too many ids to the exception of the rest technology in use.
+     * Default is 413 Payload Too Large.
+     */
+    protected RuntimeException tooManyIds(String message) {
+        return new WebApplicationException(message, Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    private <T> T limited(CompanyConcurrencyLimiter limiter, Supplier<T> operation) {
+        if (limiter == null)
+            return operation.get();
+        try {
+            return limiter.execute(operation);
+        } catch (CompanyOverloadException e) {
+            log.debug("Rejecting request: {}", e.getMessage());
+            throw overloaded(e);
+        }
+    }
+
+    private <T> T traced(String operation, Supplier<T> call) {
+        CompanySlowOperationLog operationLog = getSlowOperationLog();
+        return operationLog != null ? operationLog.trace(operation, call) : call.get();
+    }
+
+    private static <T> T inServiceLayer(Supplier<T> call) {
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_PERMISSION);
+        try {
+            return call.get();
+        } finally {
+            CompanyOperationTrace.exit(phase);
+        }
+    }
+
+    private CompanyConcurrencyLimiter createLimiter(String name) {
+        return new CompanyConcurrencyLimiter(name, companyOptions.getLimiterInitialLimit(), companyOptions.getLimiterMinLimit(),
+                companyOptions.getLimiterMaxLimit(), companyOptions.getLimiterLatencyTolerancePercent() / 100d);
+    }
+
 }
@@ -0,0 +1,29 @@
+package it.water.company.service.rest;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * JAX-RS hook measuring the write of the response body of traced Company operations,
+ * the time is reported to CompanySlowOperationLog as the serialization phase.
+ * Bodies of other resources are written untouched.
+ */
+@Provider
+public class CompanySerializationInterceptor implements WriterInterceptor {
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        if (!CompanySlowOperationLog.serializationStarted()) {
+            context.proceed();
+            return;
+        }
+        try {
+            context.proceed();
+        } finally {
+            CompanySlowOperationLog.serializationEnded();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package it.water.company.service.rest;
+
+import it.water.company.trace.CompanyOperationTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Writes one structured log record for Company REST operations slower than a threshold,
+ * with the per-phase breakdown collected by CompanyOperationTrace.
+ * Operations under the threshold are dropped without formatting anything, except one every samplingInterval.
+ * Serialization runs after the controller returns: once the transport hook of the rest technology in use
+ * (CompanySerializationInterceptor for JAX-RS, the Spring serialization advice for Spring) has been seen,
+ * an operation returning a body stays open until the hook reports the write of that body,
+ * so the serialization phase is the real write and counts in the slow decision.
+ * Without the hook, operations end when the controller returns and have no serialization phase.
+ */
+public class CompanySlowOperationLog {
+    private static final Logger log = LoggerFactory.getLogger(CompanySlowOperationLog.class);
+    //operation of the current thread whose response body is waiting to be written
+    private static final ThreadLocal<CompanySlowOperationLog> AWAITING_SERIALIZATION = new ThreadLocal<>();
+    private static final ThreadLocal<long[]> SERIALIZATION_START = ThreadLocal.withInitial(() -> new long[1]);
+    private static volatile boolean serializationHooked;
+
+    private final long thresholdNanos;
+    private final int samplingInterval;
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong slow = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+
+    /**
+     * @param thresholdMillis  operations lasting longer are always written
+     * @param samplingInterval one every N faster operations is written, 0 disables sampling
+     */
+    public CompanySlowOperationLog(long thresholdMillis, int samplingInterval) {
+        this.thresholdNanos = Math.max(0, thresholdMillis) * 1_000_000;
+        this.samplingInterval = Math.max(0, samplingInterval);
+    }
+
+    /**
+     * Traces the operation, nested calls on the same thread belong to the outer operation.
+     */
+    public <T> T trace(String operation, Supplier<T> call) {
+        //a body the transport never wrote, the operation ends with the duration it had when the controller returned
+        CompanySlowOperationLog unwritten = AWAITING_SERIALIZATION.get();
+        if (unwritten != null)
+            endAwaiting(unwritten);
+        if (!CompanyOperationTrace.start(operation))
+            return call.get();
+        boolean awaitSerialization = false;
+        try {
+            T result = call.get();
+            awaitSerialization = result != null && serializationHooked;
+            return result;
+        } finally {
+            if (awaitSerialization) {
+                CompanyOperationTrace.stop();
+                AWAITING_SERIALIZATION.set(this);
+            } else {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Called by the transport right before writing a response body.
+     *
+     * @return true if the body belongs to a traced operation, the transport must then call serializationEnded
+     */
+    public static boolean serializationStarted() {
+        serializationHooked = true;
+        if (AWAITING_SERIALIZATION.get() == null)
+            return false;
+        SERIALIZATION_START.get()[0] = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Called by the transport once the response is written, ends the traced operation waiting for it if any.
+     * If the body write was not reported by serializationStarted the operation ends with no serialization phase.
+     */
+    public static void serializationEnded() {
+        CompanySlowOperationLog operationLog = AWAITING_SERIALIZATION.get();
+        if (operationLog == null)
+            return;
+        long[] start = SERIALIZATION_START.get();
+        if (start[0] != 0) {
+            CompanyOperationTrace.resume();
+            CompanyOperationTrace.record(CompanyOperationTrace.PHASE_SERIALIZATION, null, System.nanoTime() - start[0]);
+            start[0] = 0;
+        }
+        endAwaiting(operationLog);
+    }
+
+    private static void endAwaiting(CompanySlowOperationLog operationLog) {
+        AWAITING_SERIALIZATION.remove();
+        SERIALIZATION_START.get()[0] = 0;
+        operationLog.finish();
+    }
+
+    private void finish() {
+        boolean isSlow = CompanyOperationTrace.elapsedNanos() > thresholdNanos;
+        boolean isSampled = !isSlow && samplingInterval > 0 && operations.incrementAndGet() % samplingInterval == 0;
+        if (!isSlow && !isSampled) {
+            CompanyOperationTrace.finish(false);
+            return;
+        }
+        String record = CompanyOperationTrace.finish(true);
+        if (isSlow) {
+            slow.incrementAndGet();
+            log.warn("Slow company operation: {}", record);
+        } else {
+            sampled.incrementAndGet();
+            log.info("Sampled company operation: {}", record);
+        }
+    }
+
+    public long getSlowOperations() {
+        return slow.get();
+    }
+
+    public long getSampledOperations() {
+        return sampled.get();
+    }
+}
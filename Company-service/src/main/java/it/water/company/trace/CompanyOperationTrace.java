@@ -0,0 +1,219 @@
+package it.water.company.trace;
+
+import java.util.Locale;
+
+/**
+ * Thread bound trace of a Company operation, split into phases recorded by each layer.
+ * The REST layer starts and finishes the trace, inner layers only enter and exit phases:
+ * when no trace is active those calls return immediately, so they cost a thread local lookup.
+ * Each phase keeps its exclusive time, the time spent in nested phases is charged to them.
+ * The trace object is reused by the thread, recording allocates nothing.
+ * A trace can be stopped when the controller returns and resumed by the transport which writes the response,
+ * so the write is part of the operation; a stopped trace reports the duration it had when stopped.
+ */
+public final class CompanyOperationTrace {
+    /**
+     * Time spent in CompanyServiceImpl and its interceptors, permission checks included
+     */
+    public static final String PHASE_PERMISSION = "permission";
+    /**
+     * Time spent in CompanySystemServiceImpl, validation and duplicate checks included
+     */
+    public static final String PHASE_VALIDATION = "validation";
+    /**
+     * Time spent executing a statement, one phase per statement
+     */
+    public static final String PHASE_SQL = "sql";
+    public static final String PHASE_SERIALIZATION = "serialization";
+    static final int MAX_PHASES = 32;
+    private static final int NOT_TRACED = -1;
+    private static final ThreadLocal<CompanyOperationTrace> CURRENT = ThreadLocal.withInitial(CompanyOperationTrace::new);
+
+    private final String[] names = new String[MAX_PHASES];
+    private final String[] details = new String[MAX_PHASES];
+    private final long[] startNanos = new long[MAX_PHASES];
+    private final long[] nanos = new long[MAX_PHASES];
+    private final long[] nestedNanos = new long[MAX_PHASES];
+    private final long[] rows = new long[MAX_PHASES];
+    private final int[] parents = new int[MAX_PHASES];
+    private String operation;
+    private boolean active;
+    private long operationStartNanos;
+    private long stopNanos;
+    private long topLevelNanos;
+    private int size;
+    private int open = NOT_TRACED;
+    private int dropped;
+
+    private CompanyOperationTrace() {
+    }
+
+    /**
+     * Starts tracing an operation on the current thread.
+     *
+     * @param operation operation name
+     * @return false if a trace is already active, in that case the caller must not finish it
+     */
+    public static boolean start(String operation) {
+        CompanyOperationTrace trace = CURRENT.get();
+        if (trace.active)
+            return false;
+        trace.active = true;
+        trace.operation = operation;
+        trace.size = 0;
+        trace.dropped = 0;
+        trace.open = NOT_TRACED;
+        trace.topLevelNanos = 0;
+        trace.stopNanos = 0;
+        trace.operationStartNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Opens a phase.
+     *
+     * @param phase  phase name
+     * @param detail optional detail, such as the executed statement
+     * @return phase handle to pass to exit, negative if nothing is traced or the trace is full
+     */
+    public static int enter(String phase, String detail) {
+        CompanyOperationTrace trace = CURRENT.get();
+        if (!trace.active)
+            return NOT_TRACED;
+        if (trace.size == MAX_PHASES) {
+            //time of dropped phases stays in the enclosing one
+            trace.dropped++;
+            return NOT_TRACED;
+        }
+        int index = trace.size++;
+        trace.names[index] = phase;
+        trace.details[index] = detail;
+        trace.rows[index] = NOT_TRACED;
+        //phases left open by a failure report no time of their own
+        trace.nanos[index] = 0;
+        trace.nestedNanos[index] = 0;
+        trace.parents[index] = trace.open;
+        trace.open = index;
+        trace.startNanos[index] = System.nanoTime();
+        return index;
+    }
+
+    public static int enter(String phase) {
+        return enter(phase, null);
+    }
+
+    public static void exit(int phase) {
+        exit(phase, NOT_TRACED);
+    }
+
+    /**
+     * Closes a phase opened by enter.
+     *
+     * @param phase    handle returned by enter
+     * @param rowCount rows read or written by the phase, negative if not applicable
+     */
+    public static void exit(int phase, long rowCount) {
+        if (phase < 0)
+            return;
+        CompanyOperationTrace trace = CURRENT.get();
+        if (!trace.active || phase >= trace.size)
+            return;
+        trace.close(phase, System.nanoTime() - trace.startNanos[phase], rowCount);
+    }
+
+    /**
+     * Records a phase measured by the caller, with exactly the given time.
+     */
+    public static void record(String phase, String detail, long elapsedNanos) {
+        int index = enter(phase, detail);
+        if (index < 0)
+            return;
+        CURRENT.get().close(index, elapsedNanos, NOT_TRACED);
+    }
+
+    /**
+     * Freezes the duration of the active trace, phases can still be recorded.
+     */
+    public static void stop() {
+        CompanyOperationTrace trace = CURRENT.get();
+        if (trace.active && trace.stopNanos == 0)
+            trace.stopNanos = System.nanoTime();
+    }
+
+    /**
+     * Lets the duration of a stopped trace run again, up to finish.
+     */
+    public static void resume() {
+        CURRENT.get().stopNanos = 0;
+    }
+
+    /**
+     * @return nanos elapsed since the active trace started, up to stop if it is stopped, 0 if no trace is active
+     */
+    public static long elapsedNanos() {
+        CompanyOperationTrace trace = CURRENT.get();
+        return trace.active ? trace.endNanos() - trace.operationStartNanos : 0;
+    }
+
+    public static boolean isActive() {
+        return CURRENT.get().active;
+    }
+
+    /**
+     * Ends the active trace.
+     *
+     * @param describe true to build the log record, false on the fast path to skip formatting
+     * @return the structured record of the operation, null if not described or no trace is active
+     */
+    public static String finish(boolean describe) {
+        CompanyOperationTrace trace = CURRENT.get();
+        if (!trace.active)
+            return null;
+        String description = describe ? trace.describe(trace.endNanos() - trace.operationStartNanos) : null;
+        trace.active = false;
+        trace.operation = null;
+        for (int i = 0; i < trace.size; i++) {
+            trace.details[i] = null;
+        }
+        return description;
+    }
+
+    private void close(int phase, long elapsed, long rowCount) {
+        nanos[phase] = elapsed - nestedNanos[phase];
+        rows[phase] = rowCount;
+        int parent = parents[phase];
+        if (parent >= 0)
+            nestedNanos[parent] += elapsed;
+        else
+            topLevelNanos += elapsed;
+        open = parent;
+    }
+
+    private long endNanos() {
+        return stopNanos != 0 ? stopNanos : System.nanoTime();
+    }
+
+    private String describe(long totalNanos) {
+        StringBuilder sb = new StringBuilder(128 + size * 64);
+        sb.append("operation=").append(operation).append(" durationMs=").append(millis(totalNanos)).append(" phases=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(names[i]).append('=').append(millis(nanos[i])).append("ms");
+            if (rows[i] >= 0)
+                sb.append(" rows=").append(rows[i]);
+            if (details[i] != null)
+                sb.append(" detail=\"").append(details[i]).append('"');
+        }
+        if (size > 0)
+            sb.append(", ");
+        sb.append("other=").append(millis(Math.max(0, totalNanos - topLevelNanos))).append("ms]");
+        if (dropped > 0)
+            sb.append(" droppedPhases=").append(dropped);
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000d);
+    }
+}
@@ -1,9 +1,17 @@
 package it.water.company;
 
 import it.water.company.api.CompanyApi;
+import it.water.company.api.CompanyOptions;
 import it.water.company.api.CompanyRepository;
 import it.water.company.api.CompanySystemApi;
+import it.water.company.api.CompanyWarmUp;
+import it.water.company.model.CompactCompanies;
+import it.water.company.model.CompactCompany;
 import it.water.company.model.Company;
+import it.water.company.model.CompanyBatchResult;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateReport;
+import it.water.company.model.CompanyDuplicateScan;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.model.PaginableResult;
 import it.water.core.api.model.Role;
@@ -26,6 +34,15 @@ import lombok.Setter;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
 /**
  * Generated with Water Generator.
  * Test class for Company Services.
@@ -278,6 +295,226 @@ class CompanyApiTest implements Service {
         Assertions.assertThrows(NoResultException.class, () -> this.companyApi.find(savedEntityId));
     }
 
+    /**
+     * Testing count-free pagination, next page is detected without counting total results
+     */
+    @Order(14)
+    @Test
+    void findAllWithoutCountShouldDetectNextPage() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        for (int i = 501; i < 506; i++) {
+            this.companyApi.save(createCompany(i));
+        }
+        Query q = this.companyRepository.getQueryBuilderInstance().createQueryFilter("businessName=exampleName501");
+        PaginableResult<Company> single = this.companyApi.findAll(q, 10, 1, null, false);
+        Assertions.assertEquals(1, single.getResults().size());
+        Assertions.assertEquals(1, single.getNextPage());
+        PaginableResult<Company> firstPage = this.companyApi.findAll(null, 2, 1, null, false);
+        Assertions.assertEquals(2, firstPage.getResults().size());
+        Assertions.assertEquals(2, firstPage.getNextPage());
+        Assertions.assertEquals(this.companyApi.findAll(null, 2, 1, null).getResults().size(), firstPage.getResults().size());
+    }
+
+    /**
+     * Testing compact read model, values must match managed entities and repetitive values must be shared
+     */
+    @Order(15)
+    @Test
+    void findAllCompactShouldMatchEntities() {
+        CompanySystemApi companySystemApi = this.componentRegistry.findComponent(CompanySystemApi.class, null);
+        PaginableResult<Company> all = companySystemApi.findAll(null, -1, -1, null);
+        CompactCompanies compactCompanies = companySystemApi.findAllCompact(null);
+        Assertions.assertEquals(all.getResults().size(), compactCompanies.size());
+        Company entity = all.getResults().iterator().next();
+        CompactCompany compact = compactCompanies.getCompanies().stream().filter(c -> c.getId() == entity.getId()).findFirst().orElseThrow();
+        Assertions.assertEquals(entity.getBusinessName(), compact.getBusinessName());
+        Assertions.assertEquals(entity.getCity(), compact.getCity());
+        Assertions.assertEquals(entity.getPostalCode(), compact.getPostalCode());
+        Assertions.assertEquals(entity.getNation(), compact.getNation());
+        Assertions.assertEquals(entity.getVatNumber(), compact.getVatNumber());
+        Query q = this.companyRepository.getQueryBuilderInstance().createQueryFilter("businessName=exampleName501");
+        Assertions.assertEquals(1, companySystemApi.findAllCompact(q).size());
+        //filters the query plan cannot compile are rejected instead of loading entities
+        Query like = this.companyRepository.getQueryBuilderInstance().createQueryFilter("businessName LIKE exampleName5%");
+        Assertions.assertThrows(WaterRuntimeException.class, () -> companySystemApi.findAllCompact(like));
+    }
+
+    /**
+     * Testing warm-up state, hot ids and used filters must be stored and the warm-up must run on them
+     */
+    @Order(16)
+    @Test
+    void warmUpStateShouldContainHotIdsAndFilters() throws IOException {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        CompanyWarmUp companyWarmUp = this.componentRegistry.findComponent(CompanyWarmUp.class, null);
+        CompanyOptions companyOptions = this.componentRegistry.findComponent(CompanyOptions.class, null);
+        Company entity = this.companyApi.save(createCompany(601));
+        for (int i = 0; i < 3; i++)
+            companyWarmUp.recordFind(entity.getId(), 1000);
+        Query q = this.companyRepository.getQueryBuilderInstance().createQueryFilter("businessName=exampleName601");
+        Assertions.assertEquals(1, this.companyApi.findAll(q, 10, 1, null).getResults().size());
+        companyWarmUp.saveState();
+        List<String> state = Files.readAllLines(Paths.get(companyOptions.getWarmUpStateFile()), StandardCharsets.UTF_8);
+        Assertions.assertTrue(state.contains("id " + entity.getId()));
+        Assertions.assertTrue(state.stream().anyMatch(line -> line.startsWith("filter businessName")));
+        Assertions.assertTrue(state.stream().noneMatch(line -> line.contains("exampleName601")));
+        Assertions.assertTrue(this.companyRepository.precompileFilterShape("businessName = ?"));
+        Assertions.assertDoesNotThrow(companyWarmUp::warmUp);
+    }
+
+    @Order(17)
+    @Test
+    void nearDuplicatesShouldBeFoundInTheSameArea() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        Company original = this.companyApi.save(new Company("Acme Logistics S.r.l.", "Via Roma 1", "Roma", "00100", "IT", "IT00000000701", 701L));
+        Company duplicate = this.companyApi.save(new Company("ACME Logistic Srl", "Via Roma 1", "Roma", "00100", "IT", "IT00000000702", 702L));
+        this.companyApi.save(new Company("Acme Logistics S.r.l.", "Via Milano 1", "Milano", "20100", "IT", "IT00000000703", 703L));
+        this.companyApi.save(new Company("Globex Corporation", "Via Roma 2", "Roma", "00100", "IT", "IT00000000704", 704L));
+        List<CompanyDuplicate> duplicates = this.companyApi.findDuplicates(original.getId());
+        Assertions.assertEquals(1, duplicates.size());
+        Assertions.assertEquals(duplicate.getId(), duplicates.get(0).getDuplicateId());
+        CompanyDuplicateReport report = awaitDuplicatesScan(this.companyApi.startDuplicatesScan());
+        Assertions.assertTrue(report.getDuplicates().stream()
+                .anyMatch(d -> d.getCompanyId() + d.getDuplicateId() == original.getId() + duplicate.getId()));
+        Assertions.assertTrue(report.getComparisons() < report.getScannedCompanies() * (report.getScannedCompanies() - 1) / 2);
+        Assertions.assertThrows(NoResultException.class, () -> this.companyApi.findDuplicates(999999));
+        //the check run in background after the save of the duplicate flagged it
+        Assertions.assertTrue(awaitFlaggedDuplicate(duplicate.getId(), original.getId()));
+        //companies of the admin are not visible to the manager, neither are their duplicates
+        TestRuntimeInitializer.getInstance().impersonate(companyManagerUser, runtime);
+        Assertions.assertTrue(this.companyApi.getDuplicatesScan().getReport().getDuplicates().stream()
+                .noneMatch(d -> d.getCompanyId() == original.getId() || d.getDuplicateId() == original.getId()));
+        Assertions.assertTrue(this.companyApi.getFlaggedDuplicates().stream()
+                .noneMatch(d -> d.getCompanyId() == duplicate.getId() || d.getDuplicateId() == duplicate.getId()));
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+    }
+
+    /**
+     * Testing batch-get over several chunks, test properties set a chunk size of 4:
+     * duplicates, nulls and the ids repeated to pad the last chunk must not show up in the result,
+     * ids must come back in the requested order, split into found, missing and forbidden
+     */
+    @Order(18)
+    @Test
+    void batchGetShouldResolveIdsAcrossChunks() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        Assertions.assertEquals(4, this.componentRegistry.findComponent(CompanyOptions.class, null).getBatchGetChunkSize());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            ids.add(this.companyApi.save(createCompany(1000 + i)).getId());
+        //10 distinct ids plus a missing one: 3 chunks, the last one padded
+        List<Long> requested = new ArrayList<>(ids);
+        requested.add(3, ids.get(0));
+        requested.add(null);
+        requested.add(999999L);
+        requested.add(ids.get(9));
+        requested.add(999999L);
+        CompanyBatchResult result = this.companyApi.findAllByIds(requested);
+        Assertions.assertEquals(ids, result.getCompanies().stream().map(Company::getId).collect(Collectors.toList()));
+        for (Company company : result.getCompanies())
+            Assertions.assertEquals(this.companyApi.find(company.getId()).getBusinessName(), company.getBusinessName());
+        Assertions.assertEquals(List.of(999999L), result.getMissingIds());
+        Assertions.assertTrue(result.getForbiddenIds().isEmpty());
+        //companies owned by other users are reported as forbidden, in every chunk
+        TestRuntimeInitializer.getInstance().impersonate(companyEditorUser, runtime);
+        List<Long> editorIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            editorIds.add(this.companyApi.save(createCompany(1300 + i)).getId());
+        TestRuntimeInitializer.getInstance().impersonate(companyManagerUser, runtime);
+        List<Long> managerIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+            managerIds.add(this.companyApi.save(createCompany(1310 + i)).getId());
+        List<Long> mixed = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            mixed.add(editorIds.get(i));
+            mixed.add(managerIds.get(i));
+        }
+        mixed.add(2, 999998L);
+        mixed.add(editorIds.get(0));
+        mixed.add(managerIds.get(4));
+        CompanyBatchResult managerResult = this.companyApi.findAllByIds(mixed);
+        Assertions.assertEquals(managerIds, managerResult.getCompanies().stream().map(Company::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(editorIds, managerResult.getForbiddenIds());
+        Assertions.assertEquals(List.of(999998L), managerResult.getMissingIds());
+    }
+
+    /**
+     * Testing count-free pagination as a non admin user, whose findAll filter gets the permission clauses added:
+     * pages must match the counted findAll of the same user and no COUNT query must run
+     */
+    @Order(19)
+    @Test
+    void findAllWithoutCountShouldApplyPermissionsWithoutCounting() {
+        TestRuntimeInitializer.getInstance().impersonate(companyManagerUser, runtime);
+        for (int i = 1400; i < 1403; i++)
+            this.companyApi.save(createCompany(i));
+        List<Long> visible = this.companyApi.findAll(null, -1, -1, null).getResults().stream().map(Company::getId).sorted().collect(Collectors.toList());
+        Assertions.assertTrue(visible.size() >= 3);
+        long countQueries = this.companyRepository.getCountQueries();
+        List<Long> paged = new ArrayList<>();
+        int page = 1;
+        int pages = 0;
+        do {
+            PaginableResult<Company> result = this.companyApi.findAll(null, 2, page, null, false);
+            result.getResults().forEach(company -> paged.add(company.getId()));
+            Assertions.assertTrue(result.getResults().size() <= 2);
+            page = result.getNextPage();
+            pages++;
+        } while (page != 1 && pages <= visible.size());
+        Assertions.assertEquals((visible.size() + 1) / 2, pages);
+        Assertions.assertEquals(visible, paged.stream().sorted().collect(Collectors.toList()));
+        Assertions.assertEquals(countQueries, this.companyRepository.getCountQueries());
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+    }
+
+    /**
+     * Testing the VAT number pre-check on update: a VAT number taken by another company is rejected,
+     * updates keeping their own VAT number go through
+     */
+    @Order(20)
+    @Test
+    void updateShouldFailOnVatNumberOfAnotherCompany() {
+        Company first = this.companyApi.save(createCompany(1500));
+        Company second = this.companyApi.save(createCompany(1501));
+        second.setBusinessName("renamed1501");
+        second = this.companyApi.update(second);
+        Assertions.assertEquals("renamed1501", second.getBusinessName());
+        second.setVatNumber(first.getVatNumber());
+        Company taken = second;
+        Assertions.assertThrows(DuplicateEntityException.class, () -> this.companyApi.update(taken));
+        Assertions.assertEquals("vatNumber1501", this.companyApi.find(second.getId()).getVatNumber());
+    }
+
+    /**
+     * Polls the flagged duplicates until the given pair shows up
+     */
+    private boolean awaitFlaggedDuplicate(long companyId, long duplicateId) {
+        long deadline = System.currentTimeMillis() + 30000;
+        do {
+            if (this.companyApi.getFlaggedDuplicates().stream().anyMatch(d -> d.getCompanyId() == companyId && d.getDuplicateId() == duplicateId))
+                return true;
+            LockSupport.parkNanos(10_000_000);
+        } while (System.currentTimeMillis() < deadline);
+        return false;
+    }
+
+    /**
+     * Polls the background duplicate scan until the given one is over
+     */
+    private CompanyDuplicateReport awaitDuplicatesScan(CompanyDuplicateScan started) {
+        Assertions.assertTrue(started.isRunning());
+        long deadline = System.currentTimeMillis() + 30000;
+        CompanyDuplicateScan scan = this.companyApi.getDuplicatesScan();
+        while (scan.isRunning() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(10_000_000);
+            scan = this.companyApi.getDuplicatesScan();
+        }
+        Assertions.assertFalse(scan.isRunning());
+        Assertions.assertEquals(started.getStartedAt(), scan.getStartedAt());
+        Assertions.assertNull(scan.getFailure());
+        return scan.getReport();
+    }
+
     private Company createCompany(int seed) {
         Company entity = new Company("exampleName" + seed, "invoice Address" + seed, "City" + seed, "postalCode" + seed, "nation" + seed, "vatNumber" + seed, (long) seed);
         //todo add more fields here...
@@ -0,0 +1,347 @@
+package it.water.company;
+
+import it.water.company.service.rest.CompanyConcurrencyLimiter;
+import it.water.company.service.rest.CompanyOverloadException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Test class for the adaptive concurrency limiter protecting Company endpoints.
+ * Latency behaviour is checked on a simulated database running on a virtual clock, so results do not depend on the machine.
+ */
+class CompanyConcurrencyLimiterTest {
+    private static final Logger log = LoggerFactory.getLogger(CompanyConcurrencyLimiterTest.class);
+    private static final long MILLIS = 1_000_000;
+    private static final long SECONDS = 1000 * MILLIS;
+
+    @Test
+    void requestsOverTheLimitShouldBeRejected() throws InterruptedException {
+        CompanyConcurrencyLimiter limiter = new CompanyConcurrencyLimiter("test", 1, 1, 1, 2.0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> limiter.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompanyOverloadException e = Assertions.assertThrows(CompanyOverloadException.class, () -> limiter.execute(() -> "rejected"));
+        Assertions.assertTrue(e.getRetryAfterSeconds() >= 1);
+        Assertions.assertEquals(1, limiter.getRejected());
+        release.countDown();
+        holder.join();
+        Assertions.assertEquals(0, limiter.getInFlight());
+        Assertions.assertEquals("ok", limiter.execute(() -> "ok"));
+    }
+
+    @Test
+    void nestedCallsShouldNotTakeASecondSlot() {
+        CompanyConcurrencyLimiter limiter = new CompanyConcurrencyLimiter("test", 1, 1, 1, 2.0);
+        Assertions.assertEquals("nested", limiter.execute(() -> limiter.execute(() -> "nested")));
+        Assertions.assertEquals(0, limiter.getRejected());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void failedRequestsShouldReleaseTheirSlot() {
+        CompanyConcurrencyLimiter limiter = new CompanyConcurrencyLimiter("test", 1, 1, 1, 2.0);
+        Assertions.assertThrows(IllegalStateException.class, () -> limiter.execute(() -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertEquals(0, limiter.getInFlight());
+        Assertions.assertEquals("ok", limiter.execute(() -> "ok"));
+    }
+
+    @Test
+    void executeShouldMeasureLatencyWithTheGivenClock() {
+        long[] now = {0};
+        CompanyConcurrencyLimiter limiter = new CompanyConcurrencyLimiter("test", 1, 1, 1, 2.0, () -> now[0]);
+        limiter.execute(() -> now[0] += 3 * SECONDS);
+        Assertions.assertEquals(3, limiter.getRetryAfterSeconds());
+    }
+
+    /**
+     * 16 clients mixing fast and slow requests, 80% take 1 ms and 20% take 8 ms, on a database with no contention.
+     * Latency varies from request to request but its average does not rise: the limit must not shrink.
+     */
+    @Test
+    void mixedLatenciesShouldNotBeTakenForOverload() {
+        Simulation simulation = new Simulation(64, n -> (n % 5 == 0 ? 8 : 1) * MILLIS, 0);
+        CompanyConcurrencyLimiter limiter = simulation.limiter(20);
+        Result result = simulation.run(16, 10 * SECONDS);
+        Assertions.assertEquals(0, result.rejected);
+        Assertions.assertEquals(0, limiter.getRejected());
+        Assertions.assertTrue(limiter.getLimit() >= 20, "limit shrank to " + limiter.getLimit());
+    }
+
+    /**
+     * A database serving 8 queries at a time in 5 ms each, used by 8 clients, then by 64, then by 8 again.
+     * The limit has to shrink near the capacity of the database while it is overloaded, with latency bounded
+     * by the tolerance, and grow back to what 8 clients use once the overload is over.
+     */
+    @Test
+    void limitShouldShrinkUnderOverloadAndRecover() {
+        Simulation simulation = new Simulation(8, n -> 5 * MILLIS, 0);
+        CompanyConcurrencyLimiter limiter = simulation.limiter(20);
+        Result healthy = simulation.run(8, 5 * SECONDS);
+        Assertions.assertEquals(0, healthy.rejected);
+        Assertions.assertEquals(5, healthy.p99Millis());
+        int healthyLimit = limiter.getLimit();
+        Assertions.assertTrue(healthyLimit >= 16, "limit " + healthyLimit);
+
+        Result overload = simulation.run(64, 30 * SECONDS);
+        Assertions.assertTrue(overload.rejected > 0);
+        Assertions.assertTrue(limiter.getLimit() < 32, "limit stayed at " + limiter.getLimit());
+        //latency at the end of the overload, when the limiter had all the time to drift, stays within tolerance of the healthy one
+        Assertions.assertTrue(overload.lastP99Millis() <= 2 * 5 + 5, "p99 " + overload.lastP99Millis() + " ms");
+
+        Result recovered = simulation.run(8, 5 * SECONDS);
+        Assertions.assertEquals(0, recovered.rejected);
+        Assertions.assertEquals(5, recovered.lastP99Millis());
+        Assertions.assertTrue(limiter.getLimit() >= 16, "limit did not recover, it is " + limiter.getLimit());
+        Assertions.assertEquals(0, limiter.getInFlight());
+    }
+
+    /**
+     * The same database used by 64 clients giving up after 25 ms and retrying at once, as a client with a timeout does.
+     * Without the limiter every query queues for about 40 ms, the database keeps serving queries whose client already left
+     * and almost nothing completes in time. With the limiter, rejected clients back off and the admitted ones complete in time.
+     */
+    @Test
+    void limiterShouldPreserveGoodputUnderOverload() {
+        Simulation unprotected = new Simulation(8, n -> 5 * MILLIS, 25 * MILLIS);
+        unprotected.run(8, 5 * SECONDS);
+        Result without = unprotected.run(64, 30 * SECONDS);
+
+        Simulation protectedByLimiter = new Simulation(8, n -> 5 * MILLIS, 25 * MILLIS);
+        protectedByLimiter.limiter(20);
+        protectedByLimiter.run(8, 5 * SECONDS);
+        Result with = protectedByLimiter.run(64, 30 * SECONDS);
+
+        log.info("Database capacity 1600 queries/s, 64 clients with a 25 ms timeout, without limiter: {}", without);
+        log.info("Database capacity 1600 queries/s, 64 clients with a 25 ms timeout, with limiter: {}", with);
+        Assertions.assertTrue(without.goodputPerSecond() < 160, "goodput without limiter " + without.goodputPerSecond());
+        Assertions.assertTrue(with.goodputPerSecond() >= 1500, "goodput with limiter " + with.goodputPerSecond());
+        Assertions.assertTrue(with.p99Millis() < 25, "p99 with limiter " + with.p99Millis() + " ms");
+        Assertions.assertEquals(0, with.late);
+        Assertions.assertTrue(without.late > 0);
+    }
+
+    /**
+     * The database becomes three times slower for good, with no more clients than before.
+     * The limiter cannot tell it from an overload and shrinks to its minimum, then the baseline follows the new latency
+     * and the limit grows back: this is the price of the latency-driven limit, paid once per lasting change.
+     */
+    @Test
+    void baselineShouldFollowALastingSlowdown() {
+        long[] serviceMillis = {5};
+        Simulation simulation = new Simulation(8, n -> serviceMillis[0] * MILLIS, 0);
+        CompanyConcurrencyLimiter limiter = simulation.limiter(20);
+        simulation.run(8, 5 * SECONDS);
+        serviceMillis[0] = 15;
+        Result slowdown = simulation.run(8, 60 * SECONDS);
+        Assertions.assertTrue(slowdown.rejected > 0);
+        Result settled = simulation.run(8, 5 * SECONDS);
+        Assertions.assertEquals(0, settled.rejected);
+        Assertions.assertEquals(15, settled.p99Millis());
+        Assertions.assertTrue(limiter.getLimit() >= 16, "limit did not grow back, it is " + limiter.getLimit());
+    }
+
+    /**
+     * Discrete-event model of clients calling an endpoint in a loop, the endpoint runs one query on a database
+     * serving a fixed number of queries at a time, queries in excess wait in a FIFO queue.
+     * Time is virtual: the limiter reads it as its clock, so latencies are exact and runs are repeatable.
+     */
+    private static class Simulation {
+        private final int capacity;
+        private final LongUnaryOperator serviceNanos;
+        private final long timeoutNanos;
+        private final PriorityQueue<Event> events = new PriorityQueue<>();
+        private final Queue<Request> waiting = new ArrayDeque<>();
+        private CompanyConcurrencyLimiter limiter;
+        private long now;
+        private long sequence;
+        private long queries;
+        private int busy;
+        private long phaseEnd;
+        private Result result;
+
+        /**
+         * @param capacity     queries the database serves at a time
+         * @param serviceNanos service time of the n-th query
+         * @param timeoutNanos client timeout, 0 for clients waiting as long as needed
+         */
+        Simulation(int capacity, LongUnaryOperator serviceNanos, long timeoutNanos) {
+            this.capacity = capacity;
+            this.serviceNanos = serviceNanos;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        CompanyConcurrencyLimiter limiter(int initialLimit) {
+            limiter = new CompanyConcurrencyLimiter("simulation", initialLimit, 2, 200, 2.0, () -> now);
+            return limiter;
+        }
+
+        /**
+         * Runs the clients in a loop for the given virtual time, then lets the requests in flight complete.
+         */
+        Result run(int clients, long durationNanos) {
+            phaseEnd = now + durationNanos;
+            result = new Result(durationNanos, now + durationNanos * 3 / 4);
+            for (int i = 0; i < clients; i++)
+                schedule(now, this::send);
+            while (!events.isEmpty()) {
+                Event event = events.poll();
+                now = event.time;
+                event.action.run();
+            }
+            return result;
+        }
+
+        private void send() {
+            if (now >= phaseEnd)
+                return;
+            if (limiter != null && !limiter.tryAcquire()) {
+                result.rejected++;
+                //a rejected client backs off for the time of a query before retrying
+                schedule(now + serviceNanos.applyAsLong(queries), this::send);
+                return;
+            }
+            Request request = new Request(now);
+            if (busy < capacity)
+                start(request);
+            else
+                waiting.add(request);
+            if (timeoutNanos > 0)
+                schedule(now + timeoutNanos, () -> giveUp(request));
+        }
+
+        private void giveUp(Request request) {
+            if (request.done)
+                return;
+            request.abandoned = true;
+            send();
+        }
+
+        private void start(Request request) {
+            busy++;
+            schedule(now + serviceNanos.applyAsLong(queries++), () -> complete(request));
+        }
+
+        private void complete(Request request) {
+            busy--;
+            long latency = now - request.sentAt;
+            if (limiter != null)
+                limiter.release(latency);
+            request.done = true;
+            if (!waiting.isEmpty())
+                start(waiting.poll());
+            if (request.abandoned) {
+                result.late++;
+            } else {
+                result.record(now, latency);
+                send();
+            }
+        }
+
+        private void schedule(long time, Runnable action) {
+            events.add(new Event(time, sequence++, action));
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long sequence;
+        private final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class Request {
+        private final long sentAt;
+        private boolean done;
+        private boolean abandoned;
+
+        Request(long sentAt) {
+            this.sentAt = sentAt;
+        }
+    }
+
+    /**
+     * Requests completed in time, requests completed after their client gave up and rejected requests of a phase.
+     */
+    private static class Result {
+        private final long durationNanos;
+        private final long lastQuarterStart;
+        private final List<Long> latencies = new ArrayList<>();
+        private final List<Long> lastQuarterLatencies = new ArrayList<>();
+        private long late;
+        private long rejected;
+
+        Result(long durationNanos, long lastQuarterStart) {
+            this.durationNanos = durationNanos;
+            this.lastQuarterStart = lastQuarterStart;
+        }
+
+        void record(long completedAt, long latencyNanos) {
+            latencies.add(latencyNanos);
+            if (completedAt >= lastQuarterStart)
+                lastQuarterLatencies.add(latencyNanos);
+        }
+
+        long goodputPerSecond() {
+            return latencies.size() * SECONDS / durationNanos;
+        }
+
+        long p99Millis() {
+            return percentile(latencies, 0.99) / MILLIS;
+        }
+
+        /**
+         * @return p99 latency over the last quarter of the phase
+         */
+        long lastP99Millis() {
+            return percentile(lastQuarterLatencies, 0.99) / MILLIS;
+        }
+
+        private static long percentile(List<Long> values, double percentile) {
+            if (values.isEmpty())
+                return 0;
+            List<Long> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            return sorted.get((int) Math.ceil(percentile * sorted.size()) - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "goodput=" + goodputPerSecond() + "/s, p99=" + p99Millis() + "ms, late=" + late + ", rejected=" + rejected;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package it.water.company;
+
+import it.water.company.model.CompactCompanies;
+import it.water.company.model.CompanyDuplicate;
+import it.water.company.model.CompanyDuplicateReport;
+import it.water.company.service.CompanyDuplicateEngine;
+import it.water.company.service.CompanyNameNormalizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Test class for fuzzy duplicate detection of companies.
+ */
+class CompanyDuplicateEngineTest {
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "omega", "nord", "sud", "tecno", "servizi", "logistica",
+            "costruzioni", "impianti", "trasporti", "consulting", "digital", "energia", "sistemi", "meccanica", "alimentari", "moda"};
+
+    @Test
+    void namesShouldBeNormalized() {
+        Assertions.assertArrayEquals(new String[]{"acme"}, CompanyNameNormalizer.tokens("ACME S.r.l."));
+        Assertions.assertArrayEquals(new String[]{"figli", "rossi"}, CompanyNameNormalizer.tokens("Rossi & Figli SpA"));
+        Assertions.assertArrayEquals(new String[]{"cafe", "societa"}, CompanyNameNormalizer.tokens("Caf\u00e9 Societ\u00e0"));
+        Assertions.assertArrayEquals(new String[]{"srl"}, CompanyNameNormalizer.tokens("S.r.l."));
+        Assertions.assertEquals(0, CompanyNameNormalizer.tokens(" ").length);
+    }
+
+    @Test
+    void nearDuplicatesShouldBeFoundInTheArea() {
+        CompactCompanies area = new CompactCompanies();
+        area.add(1, "Acme Logistics Srl", "Via Roma 1", "Roma", "00100", "IT", "IT001", 1L);
+        area.add(2, "ACME Logistic S.r.l.", "Via Roma 1", "Roma", "00100", "IT", "IT002", 1L);
+        area.add(3, "Globex Corporation", "Via Roma 2", "Roma", "00100", "IT", "IT003", 1L);
+        area.add(4, "Logistics Acme", "Via Roma 3", "Roma", "00100", "IT", "IT004", 1L);
+        area.add(5, "Akme Logistics", "Via Roma 4", "Roma", "00100", "IT", "IT005", 1L);
+        CompanyDuplicateEngine engine = new CompanyDuplicateEngine(0.88, 1000);
+        List<CompanyDuplicate> duplicates = engine.findDuplicates(1, "Acme Logistics Srl", area);
+        List<Long> ids = duplicates.stream().map(CompanyDuplicate::getDuplicateId).collect(Collectors.toList());
+        Assertions.assertEquals(List.of(4L, 2L, 5L), ids);
+        Assertions.assertEquals(1.0, duplicates.get(0).getScore());
+        Assertions.assertTrue(engine.findDuplicates(3, "Globex Corporation", area).isEmpty());
+    }
+
+    @Test
+    void scanShouldFindEachPairOnceWithoutComparingEveryPair() {
+        Random random = new Random(42);
+        List<CompactCompanies> areas = new ArrayList<>();
+        long id = 0;
+        int companies = 0;
+        long allPairs = 0;
+        for (int a = 0; a < 20; a++) {
+            CompactCompanies area = new CompactCompanies();
+            for (int i = 0; i < 1000; i++) {
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + (100000 + random.nextInt(900000));
+                area.add(++id, name, "address", "city", "CAP" + a, "IT", "VAT" + id, 1L);
+            }
+            area.add(++id, "Rossi Costruzioni Generali", "address", "city", "CAP" + a, "IT", "VAT" + id, 1L);
+            area.add(++id, "Costruzioni Generali Rosi S.p.A.", "address", "city", "CAP" + a, "IT", "VAT" + id, 1L);
+            companies += area.size();
+            allPairs += (long) area.size() * (area.size() - 1) / 2;
+            areas.add(area);
+        }
+        CompanyDuplicateEngine engine = new CompanyDuplicateEngine(0.9, 50);
+        CompanyDuplicateReport report = scan(engine, areas, 100, 4);
+        Assertions.assertEquals(companies, report.getScannedCompanies());
+        Assertions.assertEquals(20, report.getAreas());
+        Assertions.assertTrue(report.getPurgedBlocks() > 0);
+        Assertions.assertTrue(report.getComparisons() < allPairs / 10, report.getComparisons() + " comparisons of " + allPairs + " pairs");
+        List<CompanyDuplicate> rossi = report.getDuplicates().stream()
+                .filter(duplicate -> duplicate.getBusinessName().contains("Rossi") || duplicate.getDuplicateBusinessName().contains("Rossi"))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(20, rossi.size());
+    }
+
+    @Test
+    void reportShouldBeTruncated() {
+        CompactCompanies area = new CompactCompanies();
+        for (int i = 1; i <= 10; i++) {
+            area.add(i, "Same Name", "address", "city", "00100", "IT", "VAT" + i, 1L);
+        }
+        List<CompactCompanies> areas = List.of(area);
+        CompanyDuplicateReport report = scan(new CompanyDuplicateEngine(0.9, 1000), areas, 5, 2);
+        Assertions.assertEquals(45, report.getDuplicatesFound());
+        Assertions.assertEquals(45, report.getComparisons());
+        Assertions.assertEquals(5, report.getDuplicates().size());
+    }
+
+    private static CompanyDuplicateReport scan(CompanyDuplicateEngine engine, List<CompactCompanies> areas, int maxReportSize, int parallelism) {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            return engine.scan(areas::forEach, maxReportSize, workers, parallelism);
+        } finally {
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package it.water.company;
+
+import it.water.company.service.CompanyHotIds;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Test class for the hot company ids ranking used by the warm-up.
+ */
+class CompanyHotIdsTest {
+
+    @Test
+    void mostRequestedIdsShouldComeFirst() {
+        CompanyHotIds hotIds = new CompanyHotIds(100);
+        for (int i = 0; i < 3; i++)
+            hotIds.record(7);
+        hotIds.record(3);
+        hotIds.record(5);
+        hotIds.record(5);
+        Assertions.assertEquals(List.of(7L, 5L, 3L), hotIds.top(10));
+        Assertions.assertEquals(List.of(7L, 5L), hotIds.top(2));
+    }
+
+    @Test
+    void seededRankingShouldBeKept() {
+        CompanyHotIds hotIds = new CompanyHotIds(100);
+        hotIds.seed(10, 3);
+        hotIds.seed(20, 2);
+        hotIds.seed(30, 1);
+        hotIds.record(30);
+        Assertions.assertEquals(List.of(10L, 20L, 30L), hotIds.top(3));
+    }
+
+    @Test
+    void trackedIdsShouldStayBounded() {
+        CompanyHotIds hotIds = new CompanyHotIds(10);
+        for (int i = 0; i < 5; i++)
+            hotIds.record(1);
+        for (long id = 100; id < 200; id++)
+            hotIds.record(id);
+        Assertions.assertTrue(hotIds.size() <= 10);
+        Assertions.assertEquals(List.of(1L), hotIds.top(1));
+    }
+}
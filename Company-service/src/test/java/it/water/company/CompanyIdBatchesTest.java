@@ -0,0 +1,33 @@
+package it.water.company;
+
+import it.water.company.repository.CompanyIdBatches;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test class for the chunking of multi-get ids.
+ */
+class CompanyIdBatchesTest {
+
+    @Test
+    void idsShouldBeDistinctInRequestedOrder() {
+        Assertions.assertEquals(List.of(3L, 1L, 2L), CompanyIdBatches.distinct(Arrays.asList(3L, 1L, null, 3L, 2L, 1L)));
+        Assertions.assertTrue(CompanyIdBatches.distinct(null).isEmpty());
+    }
+
+    @Test
+    void chunksShouldBePaddedToTheSameSize() {
+        List<List<Long>> chunks = CompanyIdBatches.chunks(List.of(1L, 2L, 3L, 4L, 5L), 2);
+        Assertions.assertEquals(List.of(List.of(1L, 2L), List.of(3L, 4L), List.of(5L, 5L)), chunks);
+        Assertions.assertEquals(List.of(List.of(1L, 2L, 3L, 4L, 5L)), CompanyIdBatches.chunks(List.of(1L, 2L, 3L, 4L, 5L), 5));
+        Assertions.assertTrue(CompanyIdBatches.chunks(List.of(), 100).isEmpty());
+    }
+
+    @Test
+    void inFilterShouldListEveryId() {
+        Assertions.assertEquals("id IN (7, 8, 8)", CompanyIdBatches.inFilter(List.of(7L, 8L, 8L)));
+    }
+}
@@ -0,0 +1,122 @@
+package it.water.company;
+
+import it.water.company.service.rest.CompanySlowOperationLog;
+import it.water.company.trace.CompanyOperationTrace;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test class for the per-phase trace of Company operations and the slow operation log.
+ */
+class CompanyOperationTraceTest {
+
+    @Test
+    void phasesShouldBeIgnoredWithoutActiveTrace() {
+        Assertions.assertFalse(CompanyOperationTrace.isActive());
+        int phase = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, "select");
+        Assertions.assertTrue(phase < 0);
+        CompanyOperationTrace.exit(phase, 1);
+        Assertions.assertNull(CompanyOperationTrace.finish(true));
+    }
+
+    @Test
+    void nestedPhasesShouldReportExclusiveTime() throws InterruptedException {
+        Assertions.assertTrue(CompanyOperationTrace.start("save"));
+        Assertions.assertFalse(CompanyOperationTrace.start("nested"));
+        int permission = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_PERMISSION);
+        int validation = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_VALIDATION);
+        int sql = CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, "insert Company");
+        Thread.sleep(50);
+        CompanyOperationTrace.exit(sql, 1);
+        CompanyOperationTrace.exit(validation);
+        CompanyOperationTrace.exit(permission);
+        CompanyOperationTrace.record(CompanyOperationTrace.PHASE_SERIALIZATION, null, 2_000_000);
+        String record = CompanyOperationTrace.finish(true);
+        Assertions.assertFalse(CompanyOperationTrace.isActive());
+        Assertions.assertTrue(record.startsWith("operation=save durationMs="), record);
+        Assertions.assertTrue(record.contains("sql="), record);
+        Assertions.assertTrue(record.contains(" rows=1 detail=\"insert Company\""), record);
+        Assertions.assertTrue(record.contains("serialization=2.00ms"), record);
+        //time spent in sql must not be charged to the enclosing phases
+        Assertions.assertTrue(phaseMillis(record, "sql") >= 50, record);
+        Assertions.assertTrue(phaseMillis(record, "validation") < 50, record);
+        Assertions.assertTrue(phaseMillis(record, "permission") < 50, record);
+    }
+
+    @Test
+    void phasesOverTheLimitShouldBeCounted() {
+        Assertions.assertTrue(CompanyOperationTrace.start("findAll"));
+        for (int i = 0; i < 40; i++) {
+            CompanyOperationTrace.exit(CompanyOperationTrace.enter(CompanyOperationTrace.PHASE_SQL, "select"), 0);
+        }
+        String record = CompanyOperationTrace.finish(true);
+        Assertions.assertTrue(record.endsWith("droppedPhases=8"), record);
+    }
+
+    @Test
+    void onlySlowOrSampledOperationsShouldBeWritten() {
+        CompanySlowOperationLog sampling = new CompanySlowOperationLog(60000, 10);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals("ok", sampling.trace("findAll", () -> "ok"));
+            CompanySlowOperationLog.serializationEnded();
+        }
+        Assertions.assertEquals(0, sampling.getSlowOperations());
+        Assertions.assertEquals(10, sampling.getSampledOperations());
+        CompanySlowOperationLog slow = new CompanySlowOperationLog(0, 0);
+        Assertions.assertThrows(IllegalStateException.class, () -> slow.trace("save", () -> {
+            pause(2);
+            throw new IllegalStateException();
+        }));
+        Assertions.assertEquals(1, slow.getSlowOperations());
+        Assertions.assertFalse(CompanyOperationTrace.isActive());
+    }
+
+    /**
+     * An operation returning quickly is slow if writing its body is slow: the write reported by the transport hook
+     * is part of the operation and of the slow decision
+     */
+    @Test
+    void serializationShouldCountInTheSlowDecision() {
+        CompanySlowOperationLog operationLog = new CompanySlowOperationLog(30, 0);
+        Assertions.assertFalse(CompanySlowOperationLog.serializationStarted());
+        Assertions.assertEquals("body", operationLog.trace("findAll", () -> "body"));
+        Assertions.assertTrue(CompanyOperationTrace.isActive());
+        Assertions.assertTrue(CompanySlowOperationLog.serializationStarted());
+        pause(40);
+        CompanySlowOperationLog.serializationEnded();
+        Assertions.assertFalse(CompanyOperationTrace.isActive());
+        Assertions.assertEquals(1, operationLog.getSlowOperations());
+    }
+
+    /**
+     * A body the transport never writes must not keep the operation open: it ends with the duration it had
+     * when the controller returned, the idle time before the next operation is not charged to it
+     */
+    @Test
+    void unwrittenBodyShouldEndWithTheNextOperation() {
+        CompanySlowOperationLog operationLog = new CompanySlowOperationLog(30, 0);
+        CompanySlowOperationLog.serializationStarted();
+        operationLog.trace("findAll", () -> "never written");
+        pause(40);
+        operationLog.trace("findAll", () -> null);
+        Assertions.assertFalse(CompanyOperationTrace.isActive());
+        Assertions.assertEquals(0, operationLog.getSlowOperations());
+    }
+
+    private static double phaseMillis(String record, String phase) {
+        Matcher matcher = Pattern.compile(phase + "=([0-9.]+)ms").matcher(record);
+        Assertions.assertTrue(matcher.find(), record);
+        return Double.parseDouble(matcher.group(1));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
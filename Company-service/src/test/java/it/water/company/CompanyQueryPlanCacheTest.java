@@ -0,0 +1,143 @@
+package it.water.company;
+
+import it.water.company.repository.CompanyQueryPlan;
+import it.water.company.repository.CompanyQueryPlanCache;
+import it.water.company.repository.CompanyQueryShape;
+import it.water.core.api.repository.query.QueryOrderParameter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test class for the findAll query plan cache.
+ * Ensures filters differing only by values share the same compiled plan.
+ */
+class CompanyQueryPlanCacheTest {
+
+    @Test
+    void sameShapeShouldReuseCompiledPlan() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape first = CompanyQueryShape.of("businessName = 'Acme' AND city = Rome", Collections.emptyList());
+        CompanyQueryShape second = CompanyQueryShape.of("businessName = 'Other' AND city = Milan", Collections.emptyList());
+        Assertions.assertEquals(first.getKey(), second.getKey());
+        Assertions.assertEquals(List.of("Other", "Milan"), second.getValues());
+        CompanyQueryPlan plan = cache.getPlan(first);
+        Assertions.assertTrue(plan.isSupported());
+        Assertions.assertSame(plan, cache.getPlan(second));
+        Assertions.assertEquals("select e from Company e where e.businessName = :p0 and e.city = :p1", plan.getSelectJpql());
+        Assertions.assertEquals("select count(e) from Company e where e.businessName = :p0 and e.city = :p1", plan.getCountJpql());
+        Assertions.assertEquals(1, cache.getStatistics().getHits());
+        Assertions.assertEquals(1, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    void nestedExpressionsShouldBeCompiled() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape shape = CompanyQueryShape.of("(nation = IT OR nation = FR) AND NOT ownerUserId IN (1, 2) AND vatNumber <> 'IT1'", Collections.emptyList());
+        Assertions.assertEquals(List.of("IT", "FR", "1", "2", "IT1"), shape.getValues());
+        CompanyQueryPlan plan = cache.getPlan(shape);
+        Assertions.assertTrue(plan.isSupported());
+        Assertions.assertEquals("(e.nation = :p0 or e.nation = :p1) and not (e.ownerUserId in (:p2, :p3)) and e.vatNumber <> :p4", plan.getWhereClause());
+    }
+
+    /**
+     * LIKE wildcards belong to the filter syntax of the default findAll, such filters are left to it
+     */
+    @Test
+    void likeFiltersShouldNotBeCompiled() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape shape = CompanyQueryShape.of("vatNumber LIKE 'IT%'", Collections.emptyList());
+        Assertions.assertEquals(List.of("IT%"), shape.getValues());
+        Assertions.assertFalse(cache.getPlan(shape).isSupported());
+    }
+
+    /**
+     * The requested order only, no tie-breaker: the same rows in the same order as the default findAll
+     */
+    @Test
+    void orderShouldBeTheRequestedOne() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        QueryOrderParameter byName = orderParameter("businessName", true);
+        QueryOrderParameter byId = orderParameter("id", false);
+        CompanyQueryPlan plan = cache.getPlan(CompanyQueryShape.of("city = Rome", List.of(byName, byId)));
+        Assertions.assertEquals("select e from Company e where e.city = :p0 order by e.businessName asc, e.id desc", plan.getSelectJpql());
+        Assertions.assertEquals("select count(e) from Company e where e.city = :p0", plan.getCountJpql());
+        Assertions.assertFalse(cache.getPlan(CompanyQueryShape.of("city = Rome", List.of(orderParameter("entityVersion", true)))).isSupported());
+    }
+
+    @Test
+    void disabledCacheShouldNotStorePlans() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(0);
+        Assertions.assertFalse(cache.isEnabled());
+        Assertions.assertTrue(new CompanyQueryPlanCache(1).isEnabled());
+        cache.preload(CompanyQueryShape.of("city = ?", Collections.emptyList()));
+        Assertions.assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    void unknownFieldsShouldNotBeCompiled() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape shape = CompanyQueryShape.of("entityCreateDate > 10", Collections.emptyList());
+        Assertions.assertFalse(cache.getPlan(shape).isSupported());
+        Assertions.assertFalse(cache.getPlan(shape).isSupported());
+        Assertions.assertEquals(1, cache.getStatistics().getMisses());
+        Assertions.assertEquals(2, cache.getStatistics().getUnsupported());
+    }
+
+    @Test
+    void cacheShouldEvictLeastRecentlyUsedShapes() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(2);
+        cache.getPlan(CompanyQueryShape.of("city = a", Collections.emptyList()));
+        cache.getPlan(CompanyQueryShape.of("nation = a", Collections.emptyList()));
+        cache.getPlan(CompanyQueryShape.of("city = b", Collections.emptyList()));
+        cache.getPlan(CompanyQueryShape.of("postalCode = a", Collections.emptyList()));
+        Assertions.assertEquals(2, cache.getStatistics().getSize());
+        Assertions.assertEquals(1, cache.getStatistics().getEvictions());
+        cache.getPlan(CompanyQueryShape.of("city = c", Collections.emptyList()));
+        Assertions.assertEquals(2, cache.getStatistics().getHits());
+    }
+
+    @Test
+    void recentFiltersShouldBeReplayable() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape byName = CompanyQueryShape.of("businessName = 'Acme' AND city = Rome", Collections.emptyList());
+        CompanyQueryShape byNation = CompanyQueryShape.of("nation IN (IT, FR)", Collections.emptyList());
+        cache.getPlan(byName);
+        cache.getPlan(byNation);
+        cache.getPlan(CompanyQueryShape.of("unknownField = 1", Collections.emptyList()));
+        List<String> recent = cache.getRecentKeys(10);
+        Assertions.assertEquals(List.of(byNation.getKey(), byName.getKey()), recent);
+        String filter = CompanyQueryShape.filterOf(recent.get(1));
+        Assertions.assertEquals("businessName = ? AND city = ?", filter);
+        //a stored filter must hit the plan compiled for the original one
+        Assertions.assertEquals(byName.getKey(), CompanyQueryShape.of(filter, Collections.emptyList()).getKey());
+        Assertions.assertEquals(byNation.getKey(), CompanyQueryShape.of(CompanyQueryShape.filterOf(recent.get(0)), Collections.emptyList()).getKey());
+        Assertions.assertEquals(List.of(byNation.getKey()), cache.getRecentKeys(1));
+    }
+
+    @Test
+    void preloadShouldNotCountAsRequest() {
+        CompanyQueryPlanCache cache = new CompanyQueryPlanCache(10);
+        CompanyQueryShape shape = CompanyQueryShape.of("businessName = ?", Collections.emptyList());
+        CompanyQueryPlan plan = cache.preload(shape);
+        Assertions.assertTrue(plan.isSupported());
+        Assertions.assertSame(plan, cache.preload(shape));
+        Assertions.assertEquals(0, cache.getStatistics().getHits());
+        Assertions.assertEquals(0, cache.getStatistics().getMisses());
+        Assertions.assertEquals(1, cache.getStatistics().getSize());
+        //a later request is served by the preloaded plan
+        Assertions.assertSame(plan, cache.getPlan(CompanyQueryShape.of("businessName = 'Acme'", Collections.emptyList())));
+        Assertions.assertEquals(1, cache.getStatistics().getHits());
+        Assertions.assertTrue(cache.getStatistics().getEstimatedSavedNanos() > 0);
+    }
+
+    private static QueryOrderParameter orderParameter(String name, boolean asc) {
+        QueryOrderParameter parameter = Mockito.mock(QueryOrderParameter.class);
+        Mockito.when(parameter.getName()).thenReturn(name);
+        Mockito.when(parameter.isAsc()).thenReturn(asc);
+        return parameter;
+    }
+}
@@ -0,0 +1,130 @@
+package it.water.company;
+
+import it.water.company.api.CompanyOptions;
+import it.water.company.model.Company;
+import it.water.company.repository.CompanyQueryShape;
+import it.water.company.repository.CompanyRepositoryImpl;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.model.PaginableResult;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.repository.query.Query;
+import it.water.core.api.service.Service;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.core.testing.utils.runtime.TestRuntimeUtils;
+import lombok.Setter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Test class checking that filters compiled by the query plan cache return the same companies as the default findAll.
+ * Each filter is parsed by the Water query builder and run by two repositories on the same data,
+ * one with the plan cache and one with the plan cache disabled, which serves every filter with the default findAll.
+ */
+@ExtendWith(WaterTestExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CompanyQueryPlanEquivalenceTest implements Service {
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    @Inject
+    @Setter
+    private Runtime runtime;
+
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    private CompanyRepositoryImpl compiled;
+    private CompanyRepositoryImpl standard;
+
+    @BeforeAll
+    void beforeAll() {
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        compiled = new CompanyRepositoryImpl();
+        compiled.setCompanyOptions(companyOptions);
+        compiled.setRuntime(runtime);
+        standard = new CompanyRepositoryImpl();
+        standard.setCompanyOptions(withoutPlanCache(companyOptions));
+        standard.setRuntime(runtime);
+        String[] cities = {"EquivRome", "EquivMilan", "EquivTurin"};
+        for (int i = 0; i < 12; i++) {
+            compiled.persist(new Company("EquivName" + i, "equiv Address" + i, cities[i % 3], "equivPostalCode" + (i % 2), i % 2 == 0 ? "EquivIT" : "EquivFR", "equivVatNumber" + i, (long) (i % 4)));
+        }
+    }
+
+    @Test
+    void equalityShouldMatchDefaultFindAll() {
+        assertSameResults("city=EquivRome", true);
+        assertSameResults("ownerUserId=2", true);
+    }
+
+    @Test
+    void comparisonsShouldMatchDefaultFindAll() {
+        assertSameResults("ownerUserId>1", true);
+        assertSameResults("ownerUserId<=1", true);
+        assertSameResults("city!=EquivRome", true);
+    }
+
+    @Test
+    void booleanOperatorsShouldMatchDefaultFindAll() {
+        assertSameResults("city=EquivRome AND nation=EquivIT", true);
+        assertSameResults("city=EquivRome OR city=EquivMilan", true);
+        assertSameResults("(city=EquivRome OR city=EquivMilan) AND NOT ownerUserId=2", true);
+    }
+
+    @Test
+    void inListsShouldMatchDefaultFindAll() {
+        assertSameResults("ownerUserId IN (1, 3)", true);
+    }
+
+    /**
+     * LIKE is not compiled, both repositories run the default findAll
+     */
+    @Test
+    void likeShouldBeLeftToDefaultFindAll() {
+        assertSameResults("businessName LIKE EquivName1%", false);
+    }
+
+    /**
+     * Compares the whole result and every page of 5, as sets: neither repository orders rows when no order is requested
+     */
+    private void assertSameResults(String definition, boolean expectCompiled) {
+        Query filter = compiled.getQueryBuilderInstance().createQueryFilter(definition);
+        Assertions.assertEquals(expectCompiled, compiled.getQueryPlanCache().getPlan(CompanyQueryShape.of(filter, null)).isSupported(), definition);
+        Set<Long> expected = ids(standard.findAll(-1, -1, filter, null));
+        Assertions.assertFalse(expected.isEmpty(), definition);
+        Assertions.assertEquals(expected, ids(compiled.findAll(-1, -1, filter, null)), definition);
+        PaginableResult<Company> standardPage = standard.findAll(5, 1, filter, null);
+        PaginableResult<Company> compiledPage = compiled.findAll(5, 1, filter, null);
+        Assertions.assertEquals(standardPage.getNumPages(), compiledPage.getNumPages(), definition);
+        Set<Long> paged = new TreeSet<>();
+        for (int page = 1; page <= compiledPage.getNumPages(); page++) {
+            Assertions.assertEquals(standard.findAll(5, page, filter, null).getResults().size(), compiled.findAll(5, page, filter, null).getResults().size(), definition);
+            paged.addAll(ids(compiled.findAll(5, page, filter, null)));
+        }
+        Assertions.assertEquals(expected, paged, definition);
+    }
+
+    private static Set<Long> ids(PaginableResult<Company> result) {
+        return result.getResults().stream().map(Company::getId).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * @return options of the test runtime, with the query plan cache disabled
+     */
+    private static CompanyOptions withoutPlanCache(CompanyOptions options) {
+        return (CompanyOptions) Proxy.newProxyInstance(CompanyOptions.class.getClassLoader(), new Class<?>[]{CompanyOptions.class},
+                (proxy, method, args) -> "getQueryPlanCacheSize".equals(method.getName()) ? 0 : method.invoke(options, args));
+    }
+}
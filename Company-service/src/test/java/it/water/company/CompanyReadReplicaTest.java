@@ -0,0 +1,133 @@
+package it.water.company;
+
+import it.water.company.api.CompanyOptions;
+import it.water.company.model.Company;
+import it.water.company.repository.CompanyReadRouter;
+import it.water.company.repository.CompanyRepositoryImpl;
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.Service;
+import it.water.core.api.user.UserManager;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.testing.utils.bundle.TestRuntimeInitializer;
+import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.core.testing.utils.runtime.TestRuntimeUtils;
+import lombok.Setter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test class for read/write splitting on two HSQLDB instances.
+ * The read-only unit is a separate, empty database: rows can be read only from the unit they were written to,
+ * which tells which unit served each read.
+ */
+@ExtendWith(WaterTestExtension.class)
+class CompanyReadReplicaTest implements Service {
+    private static final String READ_PERSISTENCE_UNIT = "company-read-persistence-unit";
+
+    @Inject
+    @Setter
+    private ComponentRegistry componentRegistry;
+
+    @Inject
+    @Setter
+    private Runtime runtime;
+
+    @Inject
+    @Setter
+    private CompanyOptions companyOptions;
+
+    @Inject
+    @Setter
+    private UserManager userManager;
+
+    /**
+     * Reads issued by persist itself run inside the write and are taken as the primary baseline,
+     * every read after it must move exactly one counter.
+     */
+    @Test
+    void readsShouldHitReplicaWhileWritesAndPinnedCallersHitPrimary() {
+        CompanyRepositoryImpl repository = new CompanyRepositoryImpl();
+        repository.setCompanyOptions(withReadPersistenceUnit(companyOptions));
+        repository.setRuntime(runtime);
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        Company saved = repository.persist(new Company("replicaName", "replica Address", "replicaCity", "replicaPostalCode", "replicaNation", "replicaVatNumber", 1L));
+        CompanyReadRouter.Statistics afterWrite = repository.getReadRouter().getStatistics();
+        Assertions.assertEquals(1, afterWrite.getWrites());
+        Assertions.assertEquals(0, afterWrite.getReplicaReads());
+        long writePrimaryReads = afterWrite.getPrimaryReads();
+        //the writer is pinned to the primary unit and reads its own write
+        Assertions.assertEquals(saved.getId(), repository.find(saved.getId()).getId());
+        Assertions.assertFalse(repository.findAll(-1, -1, null, null).getResults().isEmpty());
+        CompanyReadRouter.Statistics afterPinnedReads = repository.getReadRouter().getStatistics();
+        Assertions.assertEquals(writePrimaryReads + 2, afterPinnedReads.getPrimaryReads());
+        Assertions.assertEquals(0, afterPinnedReads.getReplicaReads());
+        //other callers read from the replica, which has not received the row
+        TestRuntimeInitializer.getInstance().impersonate(userManager.addUser("replicaReader", "name", "lastname", "replicaReader@a.com", "TempPassword1_", "salt", false), runtime);
+        Assertions.assertTrue(repository.findAll(-1, -1, null, null).getResults().isEmpty());
+        Assertions.assertEquals(0, repository.countAll(null));
+        CompanyReadRouter.Statistics statistics = repository.getReadRouter().getStatistics();
+        Assertions.assertEquals(1, statistics.getWrites());
+        Assertions.assertEquals(writePrimaryReads + 2, statistics.getPrimaryReads());
+        Assertions.assertEquals(2, statistics.getReplicaReads());
+        Assertions.assertEquals(2d / (writePrimaryReads + 4), statistics.getReplicaReadShare(), 1e-9);
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        repository.remove(saved.getId());
+    }
+
+    /**
+     * Anonymous callers cannot be told apart, so their writes never pin reads to the primary unit:
+     * an anonymous read right after an anonymous write is served by the replica.
+     * A logged writer stays pinned while anonymous reads keep going to the replica.
+     */
+    @Test
+    void anonymousCallersShouldReadFromReplica() {
+        AtomicBoolean anonymous = new AtomicBoolean(false);
+        CompanyRepositoryImpl repository = new CompanyRepositoryImpl();
+        repository.setCompanyOptions(withReadPersistenceUnit(companyOptions));
+        repository.setRuntime(withAnonymousCaller(runtime, anonymous));
+        TestRuntimeUtils.impersonateAdmin(componentRegistry);
+        Company saved = repository.persist(new Company("anonymousName", "anonymous Address", "anonymousCity", "anonymousPostalCode", "anonymousNation", "anonymousVatNumber", 1L));
+        long writePrimaryReads = repository.getReadRouter().getStatistics().getPrimaryReads();
+
+        anonymous.set(true);
+        Assertions.assertNull(repository.find(saved.getId()));
+        Assertions.assertTrue(repository.findAll(-1, -1, null, null).getResults().isEmpty());
+        Company anonymousWrite = repository.persist(new Company("anonymousName2", "anonymous Address2", "anonymousCity", "anonymousPostalCode", "anonymousNation", "anonymousVatNumber2", 1L));
+        long anonymousWritePrimaryReads = repository.getReadRouter().getStatistics().getPrimaryReads() - writePrimaryReads;
+        Assertions.assertNull(repository.find(anonymousWrite.getId()));
+        Assertions.assertEquals(0, repository.countAll(null));
+        CompanyReadRouter.Statistics statistics = repository.getReadRouter().getStatistics();
+        Assertions.assertEquals(2, statistics.getWrites());
+        Assertions.assertEquals(4, statistics.getReplicaReads());
+        Assertions.assertEquals(writePrimaryReads + anonymousWritePrimaryReads, statistics.getPrimaryReads());
+
+        //the logged writer is still pinned
+        anonymous.set(false);
+        Assertions.assertEquals(saved.getId(), repository.find(saved.getId()).getId());
+        Assertions.assertEquals(4, repository.getReadRouter().getStatistics().getReplicaReads());
+        Assertions.assertEquals(statistics.getPrimaryReads() + 1, repository.getReadRouter().getStatistics().getPrimaryReads());
+        repository.remove(saved.getId());
+        repository.remove(anonymousWrite.getId());
+    }
+
+    /**
+     * @return options of the test runtime, with reads routed to the second HSQLDB instance
+     */
+    private static CompanyOptions withReadPersistenceUnit(CompanyOptions options) {
+        return (CompanyOptions) Proxy.newProxyInstance(CompanyOptions.class.getClassLoader(), new Class<?>[]{CompanyOptions.class},
+                (proxy, method, args) -> "getReadPersistenceUnit".equals(method.getName()) ? READ_PERSISTENCE_UNIT : method.invoke(options, args));
+    }
+
+    /**
+     * @return the test runtime, without security context while anonymous is set
+     */
+    private static Runtime withAnonymousCaller(Runtime runtime, AtomicBoolean anonymous) {
+        return (Runtime) Proxy.newProxyInstance(Runtime.class.getClassLoader(), new Class<?>[]{Runtime.class},
+                (proxy, method, args) -> "getSecurityContext".equals(method.getName()) && anonymous.get() ? null : method.invoke(runtime, args));
+    }
+}
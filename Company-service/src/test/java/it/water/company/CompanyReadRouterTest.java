@@ -0,0 +1,51 @@
+package it.water.company;
+
+import it.water.company.repository.CompanyReadRouter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for read/write routing of Company queries.
+ */
+class CompanyReadRouterTest {
+
+    @Test
+    void readsShouldStayOnPrimaryWithoutReplica() {
+        CompanyReadRouter router = new CompanyReadRouter(1000);
+        Assertions.assertFalse(router.routeToReplica("viewer", false));
+        Assertions.assertEquals(1, router.getStatistics().getPrimaryReads());
+        Assertions.assertEquals(0, router.getStatistics().getReplicaReadShare());
+    }
+
+    @Test
+    void writerShouldReadOwnWritesFromPrimary() throws InterruptedException {
+        CompanyReadRouter router = new CompanyReadRouter(100);
+        Assertions.assertTrue(router.routeToReplica("editor", true));
+        router.recordWrite("editor");
+        Assertions.assertFalse(router.routeToReplica("editor", true));
+        Assertions.assertTrue(router.routeToReplica("viewer", true));
+        Thread.sleep(200);
+        Assertions.assertTrue(router.routeToReplica("editor", true));
+        CompanyReadRouter.Statistics statistics = router.getStatistics();
+        Assertions.assertEquals(3, statistics.getReplicaReads());
+        Assertions.assertEquals(1, statistics.getPrimaryReads());
+        Assertions.assertEquals(1, statistics.getWrites());
+        Assertions.assertEquals(0.75, statistics.getReplicaReadShare());
+    }
+
+    @Test
+    void pinningCanBeDisabled() {
+        CompanyReadRouter router = new CompanyReadRouter(0);
+        router.recordWrite("editor");
+        Assertions.assertTrue(router.routeToReplica("editor", true));
+    }
+
+    @Test
+    void anonymousWritesShouldNotPinReaders() {
+        CompanyReadRouter router = new CompanyReadRouter(60000);
+        router.recordWrite(null);
+        Assertions.assertTrue(router.routeToReplica(null, true));
+        Assertions.assertTrue(router.routeToReplica("viewer", true));
+        Assertions.assertEquals(1, router.getStatistics().getWrites());
+    }
+}
@@ -0,0 +1,49 @@
+package it.water.company;
+
+import it.water.company.service.CompanySteadyState;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the time to steady state measured after activation.
+ */
+class CompanySteadyStateTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    @Test
+    void steadyStateShouldBeReachedWhenLatenciesStopDecreasing() {
+        CompanySteadyState steadyState = new CompanySteadyState(0, 10, 10);
+        long now = 0;
+        //cold start: each window is much faster than the previous one
+        long[] windowLatencies = {50 * MILLIS, 20 * MILLIS, 8 * MILLIS, 2 * MILLIS};
+        for (long latency : windowLatencies) {
+            for (int i = 0; i < 10; i++) {
+                now += latency;
+                Assertions.assertFalse(steadyState.record(now, latency));
+            }
+        }
+        Assertions.assertFalse(steadyState.isReached());
+        boolean reached = false;
+        for (int i = 0; i < 10; i++) {
+            now += 2 * MILLIS;
+            reached = steadyState.record(now, 2 * MILLIS + (i % 2) * 100_000);
+        }
+        Assertions.assertTrue(reached);
+        Assertions.assertEquals(now / MILLIS, steadyState.getReachedAfterMillis());
+        Assertions.assertEquals(50 * MILLIS, steadyState.getFirstWindowAverageNanos());
+        Assertions.assertEquals(2 * MILLIS + 50_000, steadyState.getSteadyWindowAverageNanos());
+        //measured once
+        Assertions.assertFalse(steadyState.record(now + MILLIS, 40 * MILLIS));
+        Assertions.assertEquals(now / MILLIS, steadyState.getReachedAfterMillis());
+    }
+
+    @Test
+    void warmModuleShouldReachSteadyStateAfterTwoWindows() {
+        CompanySteadyState steadyState = new CompanySteadyState(0, 5, 10);
+        for (int i = 1; i <= 10; i++)
+            steadyState.record(i * MILLIS, MILLIS);
+        Assertions.assertTrue(steadyState.isReached());
+        Assertions.assertEquals(10, steadyState.getReachedAfterMillis());
+    }
+}
@@ -0,0 +1,140 @@
+package it.water.company;
+
+import it.water.company.api.CompanyRepository;
+import it.water.company.service.CompanyVatNumberIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Test class for the VAT number index, on an in-memory repository counting the queries it serves.
+ */
+class CompanyVatNumberIndexTest {
+    private static final Logger log = LoggerFactory.getLogger(CompanyVatNumberIndexTest.class);
+
+    private final Set<String> stored = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger existsQueries = new AtomicInteger();
+    private Runnable duringLoad = () -> {
+    };
+
+    /**
+     * Imports 10000 companies on a table of 7000, 30% of the imported VAT numbers are already stored.
+     * Every duplicate must be rejected after one confirmation query, while new VAT numbers reach the database
+     * only for the false positives of the filter.
+     */
+    @Test
+    void importWithThirtyPercentDuplicatesShouldConfirmOnlyPossibleMatches() {
+        for (int i = 0; i < 7000; i++)
+            stored.add("IT" + i);
+        CompanyVatNumberIndex index = new CompanyVatNumberIndex(repository(), Runnable::run);
+        index.build();
+        int rejected = 0;
+        for (int i = 0; i < 10000; i++) {
+            String vatNumber = (i % 10 < 3) ? "IT" + (i % 7000) : "NEW" + i;
+            if (index.isDuplicate(vatNumber, 0)) {
+                rejected++;
+            } else {
+                stored.add(vatNumber);
+                index.add(vatNumber);
+            }
+        }
+        long falsePositives = index.getConfirmations() - index.getDuplicates();
+        log.info("VAT number import of 10000 companies with 30% duplicates: {} rejected, {} answered by the filter, {} confirmation queries, {} false positives",
+                rejected, index.getFilteredOut(), index.getConfirmations(), falsePositives);
+        Assertions.assertEquals(3000, rejected);
+        Assertions.assertEquals(3000, index.getDuplicates());
+        Assertions.assertEquals(10000, index.getFilteredOut() + index.getConfirmations());
+        Assertions.assertEquals(index.getConfirmations(), existsQueries.get());
+        Assertions.assertTrue(falsePositives < 140, falsePositives + " false positives out of 7000 new VAT numbers");
+        Assertions.assertEquals(1, index.getRebuilds());
+    }
+
+    /**
+     * A stale filter keeps answering while a single rebuild runs in the background,
+     * a VAT number added while the rebuild is loading must be found by the new filter.
+     */
+    @Test
+    void staleFilterShouldKeepServingWhileRebuilt() {
+        for (int i = 0; i < 100; i++)
+            stored.add("IT" + i);
+        List<Runnable> rebuilds = new ArrayList<>();
+        CompanyVatNumberIndex index = new CompanyVatNumberIndex(repository(), rebuilds::add);
+        index.build();
+        for (int i = 0; i < 300; i++)
+            index.recordRemoval();
+
+        Assertions.assertTrue(index.isDuplicate("IT1", 0));
+        Assertions.assertFalse(index.isDuplicate("NEW1", 0));
+        Assertions.assertEquals(1, rebuilds.size());
+        Assertions.assertTrue(index.isRebuilding());
+
+        duringLoad = () -> {
+            stored.add("LATE");
+            index.add("LATE");
+        };
+        rebuilds.get(0).run();
+        Assertions.assertFalse(index.isRebuilding());
+        Assertions.assertEquals(2, index.getRebuilds());
+
+        long confirmations = index.getConfirmations();
+        Assertions.assertTrue(index.isDuplicate("LATE", 0));
+        Assertions.assertEquals(confirmations + 1, index.getConfirmations());
+        Assertions.assertEquals(1, rebuilds.size());
+    }
+
+    @Test
+    void failedRebuildShouldKeepTheStaleFilter() {
+        stored.add("IT1");
+        List<Runnable> rebuilds = new ArrayList<>();
+        CompanyVatNumberIndex index = new CompanyVatNumberIndex(repository(), rebuilds::add);
+        index.build();
+        for (int i = 0; i < 300; i++)
+            index.recordRemoval();
+        Assertions.assertTrue(index.isDuplicate("IT1", 0));
+        duringLoad = () -> {
+            throw new IllegalStateException("connection lost");
+        };
+        rebuilds.get(0).run();
+        Assertions.assertFalse(index.isRebuilding());
+        Assertions.assertEquals(1, index.getRebuilds());
+        Assertions.assertTrue(index.isDuplicate("IT1", 0));
+        Assertions.assertFalse(index.isDuplicate("NEW1", 0));
+    }
+
+    /**
+     * Repository serving only the queries the index is allowed to run, every other method fails the test.
+     */
+    @SuppressWarnings("unchecked")
+    private CompanyRepository repository() {
+        return (CompanyRepository) Proxy.newProxyInstance(CompanyRepository.class.getClassLoader(), new Class<?>[]{CompanyRepository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "countVatNumbers":
+                            return (long) stored.size();
+                        case "forEachVatNumber":
+                            List<String> snapshot;
+                            synchronized (stored) {
+                                snapshot = new ArrayList<>(stored);
+                            }
+                            snapshot.forEach((Consumer<String>) args[0]);
+                            duringLoad.run();
+                            return null;
+                        case "existsByVatNumber":
+                            existsQueries.incrementAndGet();
+                            return stored.contains((String) args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,46 @@
+package it.water.company;
+
+import it.water.company.service.VatNumberBloomFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the VAT number Bloom filter used to pre-check uniqueness.
+ */
+class VatNumberBloomFilterTest {
+
+    @Test
+    void addedVatNumbersShouldAlwaysBeFound() {
+        VatNumberBloomFilter filter = new VatNumberBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("IT" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertTrue(filter.mightContain("IT" + i));
+        }
+        Assertions.assertFalse(filter.needsRebuild());
+    }
+
+    @Test
+    void falsePositiveRateShouldStayNearTarget() {
+        VatNumberBloomFilter filter = new VatNumberBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("IT" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("FR" + i))
+                falsePositives++;
+        }
+        Assertions.assertTrue(falsePositives < 300, "Too many false positives: " + falsePositives);
+    }
+
+    @Test
+    void overfilledFilterShouldAskForRebuild() {
+        VatNumberBloomFilter filter = new VatNumberBloomFilter(10, 0.01);
+        for (int i = 0; i < 11; i++) {
+            filter.add("IT" + i);
+        }
+        Assertions.assertTrue(filter.needsRebuild());
+    }
+}
@@ -132,6 +132,15 @@ Feature: Check Company Rest Api Response
     }
     """
 
+  # --------------- BATCH GET OVER THE MAX IDS -----------------------------
+
+    Given header Content-Type = 'application/json'
+    And header Accept = 'application/json'
+    Given url serviceBaseUrl+'/water/companies/batch-get'
+    And request [1, 2, 3, 4, 5, 6]
+    When method POST
+    Then status 413
+
   # --------------- DELETE -----------------------------
 
     Given header Content-Type = 'application/json'